@@ -0,0 +1,209 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compares every nearest centroid search with a brute-force scan of the codebooks.
+ *
+ * The reference is {@link Codebook#getMinDistortion(Map)}, which works on the loaded
+ * maps and shares no code with the compiled model. Each codebook is a cloud of centroids
+ * around its own mean, and the clouds overlap, so queries fall near class borders. Four
+ * features exercise the k-d tree, thirteen the vantage-point tree.
+ */
+public class CentroidIndexTest {
+
+	private static final int CODEBOOKS = 8;
+	private static final int CENTROIDS_PER_CODEBOOK = 2500;
+	private static final int QUERIES = 40;
+	private static final int TOP_K = 3;
+	private static final double TOLERANCE = 1e-9;
+
+	private static TestData lowDimension;
+	private static TestData highDimension;
+
+	@BeforeClass
+	public static void createCodebooks() {
+		lowDimension = new TestData(4, 4);
+		highDimension = new TestData(13, 13);
+	}
+
+	@Test
+	public void linearIndexFindsNearestClasses() {
+		assertTopClasses(lowDimension, SearchIndexConfig.of(CentroidIndex.LINEAR));
+		assertTopClasses(highDimension, SearchIndexConfig.of(CentroidIndex.LINEAR));
+	}
+
+	@Test
+	public void kdTreeFindsNearestClasses() {
+		assertTopClasses(lowDimension, SearchIndexConfig.of(CentroidIndex.KD_TREE));
+		assertTopClasses(highDimension, SearchIndexConfig.of(CentroidIndex.KD_TREE));
+	}
+
+	@Test
+	public void vpTreeFindsNearestClasses() {
+		assertTopClasses(lowDimension, SearchIndexConfig.of(CentroidIndex.VP_TREE));
+		assertTopClasses(highDimension, SearchIndexConfig.of(CentroidIndex.VP_TREE));
+	}
+
+	@Test
+	public void batchSearchFindsNearestClasses() {
+		for (TestData data : Arrays.asList(lowDimension, highDimension)) {
+			CodebookModel model = data.compile(SearchIndexConfig.of(CentroidIndex.LINEAR));
+			assertTrue(model.isBatchSearched());
+			assertBatchMatches(data, model);
+		}
+	}
+
+	@Test
+	public void batchOfTreeIndexSearchesTheIndex() {
+		for (String type : Arrays.asList(CentroidIndex.KD_TREE, CentroidIndex.VP_TREE)) {
+			CodebookModel model = highDimension.compile(SearchIndexConfig.of(type));
+			assertFalse(type, model.isBatchSearched());
+			assertBatchMatches(highDimension, model);
+		}
+	}
+
+	@Test
+	public void pqIndexRerankingAllCentroidsIsExact() {
+		int centroids = CODEBOOKS * CENTROIDS_PER_CODEBOOK;
+		assertTopClasses(lowDimension, new SearchIndexConfig(CentroidIndex.PQ, 2, 64, centroids));
+		assertTopClasses(highDimension, new SearchIndexConfig(CentroidIndex.PQ, 4, 64, centroids));
+	}
+
+	@Test
+	public void pqIndexWithDefaultsMostlyFindsNearestClass() {
+		CodebookModel model = highDimension.compile(SearchIndexConfig.of(CentroidIndex.PQ));
+		int hits = 0;
+		for (int q = 0; q < highDimension.queries.length; q++) {
+			CodebookModel.Match match = model.match(highDimension.queries[q]);
+			if (match.getCodebook().getAnomalyClassId() == highDimension.reference[q][0].classId) {
+				hits++;
+			}
+		}
+		assertTrue("Only " + hits + " of " + QUERIES + " nearest classes found", hits >= QUERIES * 9 / 10);
+	}
+
+	@Test
+	public void topKIsLimitedToTheNumberOfCodebooks() {
+		CodebookModel model = lowDimension.compile(SearchIndexConfig.of(CentroidIndex.KD_TREE));
+		CodebookModel.Match[] matches = model.match(lowDimension.queries[0], CODEBOOKS + 2);
+		assertEquals(CODEBOOKS, matches.length);
+		assertMatches(lowDimension.reference[0], matches);
+	}
+
+	@Test
+	public void queryOnACentroidHasZeroDistortion() {
+		for (String type : Arrays.asList(CentroidIndex.LINEAR, CentroidIndex.KD_TREE, CentroidIndex.VP_TREE)) {
+			CodebookModel model = highDimension.compile(SearchIndexConfig.of(type));
+			Map<String, Double> centroid = highDimension.codebooks.get(5).getCentroidVectors().get(17);
+			CodebookModel.Match match = model.match(highDimension.toVector(centroid));
+			assertEquals(type, 5, match.getCodebook().getAnomalyClassId().intValue());
+			assertEquals(type, 0.0, match.getDistortion(), 0.0);
+		}
+	}
+
+	private static void assertTopClasses(TestData data, SearchIndexConfig searchIndex) {
+		CodebookModel model = data.compile(searchIndex);
+		for (int q = 0; q < data.queries.length; q++) {
+			assertMatches(data.reference[q], model.match(data.queries[q], TOP_K));
+		}
+	}
+
+	private static void assertBatchMatches(TestData data, CodebookModel model) {
+		CodebookModel.Match[][] matches = model.match(data.queries, TOP_K);
+		for (int q = 0; q < data.queries.length; q++) {
+			assertMatches(data.reference[q], matches[q]);
+		}
+	}
+
+	private static void assertMatches(Reference[] expected, CodebookModel.Match[] matches) {
+		int ranks = Math.min(expected.length, TOP_K);
+		assertTrue("Expected at least " + ranks + " matches, got " + matches.length, matches.length >= ranks);
+		for (int rank = 0; rank < ranks; rank++) {
+			assertEquals("Class at rank " + rank, expected[rank].classId,
+					matches[rank].getCodebook().getAnomalyClassId().intValue());
+			assertEquals("Distortion at rank " + rank, expected[rank].distortion, matches[rank].getDistortion(),
+					TOLERANCE);
+		}
+	}
+
+	private static final class Reference {
+		private final int classId;
+		private final double distortion;
+
+		private Reference(int classId, double distortion) {
+			this.classId = classId;
+			this.distortion = distortion;
+		}
+	}
+
+	private static final class TestData {
+		private final List<String> features = new ArrayList<>();
+		private final List<Codebook> codebooks = new ArrayList<>();
+		private final double[][] queries;
+		// Classes of each query sorted by their brute-force distortion
+		private final Reference[][] reference;
+
+		private TestData(int dimension, long seed) {
+			Random random = new Random(seed);
+			for (int i = 0; i < dimension; i++) {
+				this.features.add("feature_mfcc_coeff_" + i);
+			}
+			for (int c = 0; c < CODEBOOKS; c++) {
+				double[] mean = new double[dimension];
+				for (int i = 0; i < dimension; i++) {
+					mean[i] = random.nextGaussian();
+				}
+				Codebook codebook = new Codebook(c, "Class " + c, new ArrayList<Map<String, Double>>());
+				for (int n = 0; n < CENTROIDS_PER_CODEBOOK; n++) {
+					HashMap<String, Double> centroid = new HashMap<>();
+					for (int i = 0; i < dimension; i++) {
+						centroid.put(this.features.get(i), mean[i] + random.nextGaussian());
+					}
+					codebook.addVector(centroid);
+				}
+				this.codebooks.add(codebook);
+			}
+			this.queries = new double[QUERIES][dimension];
+			this.reference = new Reference[QUERIES][];
+			for (int q = 0; q < QUERIES; q++) {
+				Map<String, Double> query = new HashMap<>();
+				for (int i = 0; i < dimension; i++) {
+					this.queries[q][i] = 1.5 * random.nextGaussian();
+					query.put(this.features.get(i), this.queries[q][i]);
+				}
+				Reference[] classes = new Reference[CODEBOOKS];
+				for (int c = 0; c < CODEBOOKS; c++) {
+					Codebook codebook = this.codebooks.get(c);
+					classes[c] = new Reference(codebook.getAnomalyClassId(), codebook.getMinDistortion(query));
+				}
+				Arrays.sort(classes, (a, b) -> Double.compare(a.distortion, b.distortion));
+				this.reference[q] = classes;
+			}
+		}
+
+		private CodebookModel compile(SearchIndexConfig searchIndex) {
+			return CodebookModel.compile(this.features, this.codebooks, searchIndex);
+		}
+
+		private double[] toVector(Map<String, Double> centroid) {
+			double[] vector = new double[this.features.size()];
+			for (int i = 0; i < vector.length; i++) {
+				vector[i] = centroid.get(this.features.get(i));
+			}
+			return vector;
+		}
+	}
+}
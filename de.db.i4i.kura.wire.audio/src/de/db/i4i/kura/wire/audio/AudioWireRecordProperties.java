@@ -3,6 +3,7 @@ package de.db.i4i.kura.wire.audio;
 public class AudioWireRecordProperties {
 	public static final String SOURCE = "source";
 	public static final String TIMESTAMP = "timestamp";
+	public static final String FRAME_OFFSET = "frame_offset";
 	public static final String AUDIO_DATA = "audio_data";
 	public static final String SAMPLE_RATE = "sample_rate";
 	public static final String SAMPLE_SIZE = "sample_size";
@@ -11,8 +12,18 @@ public class AudioWireRecordProperties {
 	public static final String BIG_ENDIAN = "big_endian";
 	public static final String PATH = "path";
 	public static final String FILENAME = "filename";
+	public static final String BUFFER_OCCUPANCY = "buffer_occupancy";
 	public static final String MAGNITUDE_SPECTRUM = "magnitude_spectrum";
+	public static final String SPECTRUM_ENCODING = "spectrum_encoding";
+	public static final String SPECTROGRAM = "spectrogram";
+	public static final String SPECTROGRAM_FRAMES = "spectrogram_frames";
+	public static final String SPECTROGRAM_BINS = "spectrogram_bins";
+	public static final String SPECTRUM_FRAME_INDEX = "spectrum_frame_index";
 	public static final String ANOMALY_CLASS_ID = "anomaly_class_id";
 	public static final String ANOMALY_CLASS_DESCRIPTION = "anomaly_class_description";
 	public static final String DISTORTION = "distortion";
+	public static final String DISTORTION_MARGIN = "distortion_margin";
+	public static final String MATCH_CONFIDENCE = "match_confidence";
+	public static final String FEATURE_VECTOR = "feature_vector";
+	public static final String FEATURE_SCHEMA = "feature_schema";
 }
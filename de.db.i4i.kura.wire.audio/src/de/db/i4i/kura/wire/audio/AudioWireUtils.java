@@ -1,27 +1,123 @@
 package de.db.i4i.kura.wire.audio;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 
 public class AudioWireUtils {
+	
+	/**
+	 * Eight bytes per value, big-endian. Assumed when a record carries no encoding.
+	 */
+	public static final String ENCODING_FLOAT64_BE = "float64be";
+	
+	/**
+	 * Four bytes per value, little-endian. Half the size at single precision.
+	 */
+	public static final String ENCODING_FLOAT32_LE = "float32le";
 
 	public static double[] byteArrayToDoubleArray(byte[] byteArray) {
 		double[] doubleArray = new double[byteArray.length / 8];
-		for (int i = 0; i < doubleArray.length; i++) {
-			doubleArray[i] = byteArrayToDouble(Arrays.copyOfRange(byteArray, i * 8, (i + 1) * 8));
-		}
+		byteArrayToDoubleArray(byteArray, doubleArray);
 		return doubleArray;
 	}
 	
+	/**
+	 * Decodes big-endian doubles into the caller's array.
+	 * 
+	 * @return the number of values decoded
+	 */
+	public static int byteArrayToDoubleArray(byte[] byteArray, double[] doubleArray) {
+		int length = byteArray.length / 8;
+		ByteBuffer.wrap(byteArray).asDoubleBuffer().get(doubleArray, 0, length);
+		return length;
+	}
+	
 	public static byte[] doubleArrayToByteArray(double[] doubleArray) {
-		byte[] byteArray = new byte[doubleArray.length * 8];
-		for (int i = 0; i < doubleArray.length; i++) {
-			byte[] byteArrayValue = doubleToByteArray(doubleArray[i]);
-			for (int j = 0; j < 8; j++) {
-				byteArray[i * 8 + j] = byteArrayValue[j];
+		return doubleArrayToByteArray(doubleArray, 0, doubleArray.length);
+	}
+	
+	public static byte[] doubleArrayToByteArray(double[] doubleArray, int offset, int length) {
+		byte[] byteArray = new byte[length * 8];
+		doubleArrayToByteArray(doubleArray, offset, length, byteArray);
+		return byteArray;
+	}
+	
+	/**
+	 * Encodes doubleArray[offset, offset + length) as big-endian doubles into the caller's array.
+	 */
+	public static void doubleArrayToByteArray(double[] doubleArray, int offset, int length, byte[] byteArray) {
+		ByteBuffer.wrap(byteArray).asDoubleBuffer().put(doubleArray, offset, length);
+	}
+	
+	/**
+	 * Decodes little-endian floats into the caller's array.
+	 * 
+	 * @return the number of values decoded
+	 */
+	public static int float32ByteArrayToDoubleArray(byte[] byteArray, double[] doubleArray) {
+		FloatBuffer floatBuffer = ByteBuffer.wrap(byteArray).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		int length = floatBuffer.remaining();
+		for (int i = 0; i < length; i++) {
+			doubleArray[i] = floatBuffer.get(i);
+		}
+		return length;
+	}
+	
+	/**
+	 * Encodes doubleArray[offset, offset + length) as little-endian floats into the caller's array.
+	 */
+	public static void doubleArrayToFloat32ByteArray(double[] doubleArray, int offset, int length, byte[] byteArray) {
+		FloatBuffer floatBuffer = ByteBuffer.wrap(byteArray).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		for (int i = 0; i < length; i++) {
+			floatBuffer.put(i, (float) doubleArray[offset + i]);
+		}
+	}
+	
+	/**
+	 * Encodes doubleArray[offset, offset + length) with the given encoding, float64be if it is null.
+	 */
+	public static byte[] encodeDoubleArray(double[] doubleArray, int offset, int length, String encoding) {
+		if (ENCODING_FLOAT32_LE.equals(encoding)) {
+			byte[] byteArray = new byte[length * 4];
+			doubleArrayToFloat32ByteArray(doubleArray, offset, length, byteArray);
+			return byteArray;
+		}
+		return doubleArrayToByteArray(doubleArray, offset, length);
+	}
+	
+	/**
+	 * Returns the number of values in byteArray with the given encoding, float64be if it is null.
+	 */
+	public static int getDecodedLength(byte[] byteArray, String encoding) {
+		return ENCODING_FLOAT32_LE.equals(encoding) ? byteArray.length / 4 : byteArray.length / 8;
+	}
+	
+	/**
+	 * Decodes byteArray with the given encoding, float64be if it is null, into the caller's array.
+	 * 
+	 * @return the number of values decoded
+	 */
+	public static int decodeDoubleArray(byte[] byteArray, String encoding, double[] doubleArray) {
+		if (ENCODING_FLOAT32_LE.equals(encoding)) {
+			return float32ByteArrayToDoubleArray(byteArray, doubleArray);
+		}
+		return byteArrayToDoubleArray(byteArray, doubleArray);
+	}
+	
+	/**
+	 * Fills the range with PCM silence, i.e. zero for signed and the mid value for unsigned samples.
+	 */
+	public static void fillSilence(byte[] audioData, int offset, int length, int sampleSize, boolean signed, boolean bigEndian) {
+		Arrays.fill(audioData, offset, offset + length, (byte) 0);
+		if (!signed) {
+			int bytesPerSample = (sampleSize + 7) / 8;
+			int msbIndex = bigEndian ? 0 : bytesPerSample - 1;
+			for (int i = offset + msbIndex; i < offset + length; i += bytesPerSample) {
+				audioData[i] = (byte) 0x80;
 			}
 		}
-		return byteArray;
 	}
 	
 	public static double byteArrayToDouble(byte[] byteArray) {
@@ -0,0 +1,117 @@
+package de.db.i4i.kura.wire.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.kura.wire.WireRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps the records of an envelope to output records, optionally on a bounded thread pool.
+ *
+ * Every input record may produce any number of output records. Outputs keep the order of
+ * their inputs whatever the parallelism. With a parallelism of 1, or a single record,
+ * the records are mapped on the calling thread. So are records that a mapper which was
+ * shut down by a concurrent reconfiguration can no longer submit, see {@link #reconfigure}.
+ */
+public class ParallelRecordMapper {
+	
+	private static final Logger logger = LoggerFactory.getLogger(ParallelRecordMapper.class);
+	
+	@FunctionalInterface
+	public interface RecordMapper {
+		void map(WireRecord record, List<WireRecord> output);
+	}
+	
+	private final int parallelism;
+	private final ExecutorService executor;
+	
+	public ParallelRecordMapper(final String name, int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+		if (this.parallelism > 1) {
+			final AtomicInteger threadNumber = new AtomicInteger();
+			this.executor = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+				Thread thread = new Thread(runnable, name + " worker " + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			this.executor = null;
+		}
+	}
+	
+	/**
+	 * Returns the current mapper if it already has the requested parallelism, otherwise
+	 * shuts it down and returns a new one. A null parallelism maps on the calling thread.
+	 */
+	public static ParallelRecordMapper reconfigure(ParallelRecordMapper current, String name, Integer parallelism) {
+		int newParallelism = parallelism != null ? Math.max(parallelism, 1) : 1;
+		if (current != null && current.getParallelism() == newParallelism) {
+			return current;
+		}
+		if (current != null) {
+			current.shutdown();
+		}
+		logger.info("{}: Processing records with parallelism {}", name, newParallelism);
+		return new ParallelRecordMapper(name, newParallelism);
+	}
+	
+	public int getParallelism() {
+		return this.parallelism;
+	}
+	
+	public List<WireRecord> map(List<WireRecord> records, final RecordMapper mapper) {
+		final List<WireRecord> output = new ArrayList<>();
+		if (this.executor == null || records.size() < 2) {
+			for (WireRecord record : records) {
+				mapper.map(record, output);
+			}
+			return output;
+		}
+		List<FutureTask<List<WireRecord>>> tasks = new ArrayList<>(records.size());
+		for (final WireRecord record : records) {
+			FutureTask<List<WireRecord>> task = new FutureTask<>(() -> {
+				List<WireRecord> recordOutput = new ArrayList<>(1);
+				mapper.map(record, recordOutput);
+				return recordOutput;
+			});
+			tasks.add(task);
+			try {
+				this.executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// Shut down while this envelope was being mapped, tasks already submitted still run
+				task.run();
+			}
+		}
+		try {
+			for (FutureTask<List<WireRecord>> task : tasks) {
+				output.addAll(task.get());
+			}
+		} catch (InterruptedException e) {
+			for (FutureTask<List<WireRecord>> task : tasks) {
+				task.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while mapping records", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Could not map record", e.getCause());
+		}
+		return output;
+	}
+	
+	public void shutdown() {
+		if (this.executor != null) {
+			this.executor.shutdown();
+		}
+	}
+}
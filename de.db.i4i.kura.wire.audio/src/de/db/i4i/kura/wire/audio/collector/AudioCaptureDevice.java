@@ -0,0 +1,225 @@
+package de.db.i4i.kura.wire.audio.collector;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One capture line of the collector, opened on a named mixer and emitted under its own source id.
+ */
+public class AudioCaptureDevice {
+
+	private static final Logger logger = LoggerFactory.getLogger(AudioCaptureDevice.class);
+
+	private static final String DEFAULT_MIXER = "DefaultMixer";
+
+	private final String mixerName;
+	private final String source;
+
+	private TargetDataLine targetDataLine;
+	private AudioRingBuffer ringBuffer;
+	private AudioCaptureWorker captureWorker;
+
+	// Frame counters of the current line, frame 0 is the first frame captured after opening
+	private int frameSize;
+	private float frameRate;
+	private long gapToleranceFrames;
+	private long startMillis;
+	private long nextFrameOffset;
+	private long skippedFrames;
+	private long lastFrameOffset;
+
+	public AudioCaptureDevice(String mixerName, String source) {
+		requireNonNull(source, "Source must not be null");
+		this.mixerName = mixerName;
+		this.source = source;
+	}
+
+	public String getMixerName() {
+		return this.mixerName;
+	}
+
+	public String getSource() {
+		return this.source;
+	}
+
+	public boolean isOpen() {
+		return this.targetDataLine != null;
+	}
+
+	/**
+	 * Opens and starts the line. A non-null ring buffer size starts a dedicated capture thread.
+	 */
+	public boolean open(AudioFormat audioFormat, int bufferSize, Float volumeLevel, Integer ringBufferSize) {
+		DataLine.Info info = new DataLine.Info(TargetDataLine.class, audioFormat);
+		try {
+			logger.debug("Mixer {}: Obtaining line...", this.mixerName);
+			this.targetDataLine = getLine(info);
+			if (isNull(this.targetDataLine)) {
+				logger.error("Mixer {}: Line is not supported: {}", this.mixerName, audioFormat.toString());
+				return false;
+			}
+			logger.debug("Mixer {}: Obtaining line...Done", this.mixerName);
+			logger.debug("Mixer {}: Opening line...", this.mixerName);
+			this.targetDataLine.open(audioFormat, bufferSize);
+			logger.debug("Mixer {}: Opening line...Done", this.mixerName);
+			setVolumeLevel(volumeLevel);
+			logger.debug("Mixer {}: Starting line...", this.mixerName);
+			this.targetDataLine.start();
+			this.frameSize = audioFormat.getFrameSize();
+			this.frameRate = audioFormat.getFrameRate();
+			this.gapToleranceFrames = (long) (this.frameRate / 100);
+			this.startMillis = System.currentTimeMillis() -
+					(long) (this.targetDataLine.getLongFramePosition() * 1000.0 / this.frameRate);
+			this.nextFrameOffset = 0;
+			this.skippedFrames = 0;
+			logger.debug("Mixer {}: Starting line...Done", this.mixerName);
+		} catch (LineUnavailableException | IllegalArgumentException e) {
+			logger.error("Mixer {}: Cannot create/open line: {}", this.mixerName, audioFormat.toString());
+			this.targetDataLine = null;
+			return false;
+		}
+		if (ringBufferSize != null) {
+			logger.debug("Mixer {}: Starting capture thread...", this.mixerName);
+			this.ringBuffer = new AudioRingBuffer(ringBufferSize / this.frameSize * this.frameSize);
+			this.captureWorker = new AudioCaptureWorker(this.targetDataLine, this.ringBuffer);
+			this.captureWorker.start("AudioCollector capture " + this.source);
+			logger.debug("Mixer {}: Starting capture thread...Done", this.mixerName);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of the first frame returned by the last {@link #read()}.
+	 * Offsets are monotonic, a jump means that frames were lost in between.
+	 */
+	public long getLastFrameOffset() {
+		return this.lastFrameOffset;
+	}
+
+	/**
+	 * Returns the capture time of the first frame returned by the last {@link #read()},
+	 * derived from its frame offset rather than from the wall clock at read time.
+	 */
+	public long getLastTimestamp() {
+		return this.startMillis + (long) (this.lastFrameOffset * 1000.0 / this.frameRate);
+	}
+
+	/**
+	 * Returns all audio captured since the last call, in a new array of exactly that length.
+	 * The array is emitted and may be kept by any wire consumer, so it is never reused.
+	 */
+	public byte[] read() {
+		byte[] audioData;
+		if (this.captureWorker != null) {
+			int availableBytes = this.ringBuffer.available();
+			long readPosition = this.ringBuffer.getReadPosition();
+			this.skippedFrames += this.captureWorker.takeSkippedFrames(readPosition);
+			this.lastFrameOffset = readPosition / this.frameSize + this.skippedFrames;
+			long skipPosition = this.captureWorker.getNextSkipPosition();
+			if (skipPosition >= 0 && skipPosition < readPosition + availableBytes) {
+				// Frames were skipped inside the snapshot, end it at the gap and leave the rest for the next one
+				logger.debug("Source {}: Ending snapshot at a gap in the ring buffer", this.source);
+				availableBytes = (int) (skipPosition - readPosition);
+			}
+			audioData = new byte[availableBytes];
+			int bytesRead = this.ringBuffer.read(audioData, 0, availableBytes);
+			logger.debug("Source {}: Took snapshot of {} bytes from ring buffer of size {}",
+					this.source, bytesRead, this.ringBuffer.capacity());
+			long droppedBytes = this.captureWorker.takeDroppedBytes();
+			if (droppedBytes > 0) {
+				logger.warn("Source {}: Ring buffer size exceeded, {} bytes of audio data were lost",
+						this.source, droppedBytes);
+			}
+		} else {
+			int bufferSize = this.targetDataLine.getBufferSize();
+			int availableBytes = this.targetDataLine.available() / this.frameSize * this.frameSize;
+			audioData = new byte[availableBytes];
+			int bytesRead = this.targetDataLine.read(audioData, 0, availableBytes);
+			long frames = bytesRead / this.frameSize;
+			long lineFrames = this.targetDataLine.getLongFramePosition() - this.targetDataLine.available() / this.frameSize;
+			long frameOffset = lineFrames - frames;
+			if (frameOffset - this.nextFrameOffset > this.gapToleranceFrames) {
+				logger.warn("Source {}: Line lost {} frames", this.source, frameOffset - this.nextFrameOffset);
+			} else {
+				// Frames arriving between the position and available() calls make the estimate jitter
+				frameOffset = this.nextFrameOffset;
+			}
+			this.lastFrameOffset = frameOffset;
+			this.nextFrameOffset = frameOffset + frames;
+			logger.debug("Source {}: Read {} of {} available bytes, line buffer size is {}",
+					this.source, bytesRead, availableBytes, bufferSize);
+			if (availableBytes == bufferSize) {
+				logger.warn("Source {}: Buffer size exceeded, some audio data was lost", this.source);
+			}
+			if (bytesRead < availableBytes) {
+				// Line was stopped while reading, only emit what is valid
+				audioData = Arrays.copyOf(audioData, bytesRead);
+			}
+		}
+		return audioData;
+	}
+
+	public void close() {
+		if (this.captureWorker != null) {
+			logger.debug("Mixer {}: Stopping capture thread...", this.mixerName);
+			this.captureWorker.stop();
+			this.captureWorker = null;
+			this.ringBuffer = null;
+			logger.debug("Mixer {}: Stopping capture thread...Done", this.mixerName);
+		}
+		if (isNull(this.targetDataLine)) {
+			return;
+		}
+		logger.debug("Mixer {}: Closing line...", this.mixerName);
+		this.targetDataLine.stop();
+		this.targetDataLine.close();
+		this.targetDataLine = null;
+		logger.debug("Mixer {}: Closing line...Done", this.mixerName);
+	}
+
+	private TargetDataLine getLine(DataLine.Info info) throws LineUnavailableException {
+		if (isNull(this.mixerName) || this.mixerName.isEmpty() || DEFAULT_MIXER.equals(this.mixerName)) {
+			return AudioSystem.isLineSupported(info) ? (TargetDataLine) AudioSystem.getLine(info) : null;
+		}
+		for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
+			if (this.mixerName.equals(mixerInfo.getName())) {
+				Mixer mixer = AudioSystem.getMixer(mixerInfo);
+				return mixer.isLineSupported(info) ? (TargetDataLine) mixer.getLine(info) : null;
+			}
+		}
+		logger.error("Mixer {}: No such mixer, available mixers are {}", this.mixerName,
+				Arrays.toString(AudioSystem.getMixerInfo()));
+		return null;
+	}
+
+	private void setVolumeLevel(Float volumeLevel) {
+		if (isNull(volumeLevel)) {
+			return;
+		}
+		if (this.targetDataLine.isControlSupported(FloatControl.Type.VOLUME)) {
+			FloatControl volume = (FloatControl) this.targetDataLine.getControl(FloatControl.Type.VOLUME);
+			volume.setValue(volume.getMinimum() + volumeLevel * (volume.getMaximum() - volume.getMinimum()));
+			logger.debug("Mixer {}: Volume set to {}", this.mixerName, volume.getValue());
+		} else if (this.targetDataLine.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+			FloatControl gain = (FloatControl) this.targetDataLine.getControl(FloatControl.Type.MASTER_GAIN);
+			float dB = (float) (20.0 * Math.log10(Math.max(volumeLevel, 1e-4)));
+			gain.setValue(Math.max(gain.getMinimum(), Math.min(gain.getMaximum(), dB)));
+			logger.debug("Mixer {}: Gain set to {}dB", this.mixerName, gain.getValue());
+		} else {
+			logger.warn("Mixer {}: Line has no volume or gain control, ignoring volume level", this.mixerName);
+		}
+	}
+}
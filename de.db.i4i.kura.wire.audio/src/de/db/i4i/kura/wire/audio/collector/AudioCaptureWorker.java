@@ -0,0 +1,159 @@
+package de.db.i4i.kura.wire.audio.collector;
+
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.fillSilence;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.TargetDataLine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Continuously drains a {@link TargetDataLine} into an {@link AudioRingBuffer}
+ * on a dedicated thread, so the line buffer never overruns because of timer jitter.
+ *
+ * The byte stream in the ring buffer is kept frame-continuous: frames lost by the
+ * line or dropped because the ring buffer was full are replaced by silence, so the
+ * frame offset of any ring position is its byte position divided by the frame size
+ * plus the frames skipped at or before that position, see {@link #takeSkippedFrames(long)}.
+ */
+public class AudioCaptureWorker implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AudioCaptureWorker.class);
+
+	private final TargetDataLine targetDataLine;
+	private final AudioRingBuffer ringBuffer;
+	private final int frameSize;
+	private final long gapToleranceFrames;
+	private final byte[] chunk;
+	private final byte[] silence;
+	private final AtomicLong droppedBytes = new AtomicLong();
+	// Gaps longer than the ring buffer, as {ring position, frames}, in position order
+	private final Queue<long[]> skips = new ConcurrentLinkedQueue<>();
+
+	// Producer-only state
+	private long accountedFrames = 0;
+	private long pendingSilenceFrames = 0;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	public AudioCaptureWorker(TargetDataLine targetDataLine, AudioRingBuffer ringBuffer) {
+		requireNonNull(targetDataLine, "Target data line must not be null");
+		requireNonNull(ringBuffer, "Ring buffer must not be null");
+		this.targetDataLine = targetDataLine;
+		this.ringBuffer = ringBuffer;
+		AudioFormat audioFormat = targetDataLine.getFormat();
+		this.frameSize = Math.max(1, audioFormat.getFrameSize());
+		this.gapToleranceFrames = (long) (audioFormat.getFrameRate() / 100);
+		// Read a quarter of the line buffer per iteration, aligned to whole frames
+		int chunkSize = Math.max(this.frameSize, targetDataLine.getBufferSize() / 4 / this.frameSize * this.frameSize);
+		this.chunk = new byte[Math.min(chunkSize, ringBuffer.capacity() / this.frameSize * this.frameSize)];
+		this.silence = new byte[this.chunk.length];
+		fillSilence(this.silence, 0, this.silence.length, audioFormat.getSampleSizeInBits(),
+				AudioFormat.Encoding.PCM_SIGNED.equals(audioFormat.getEncoding()), audioFormat.isBigEndian());
+	}
+
+	public synchronized void start(String name) {
+		this.running = true;
+		this.thread = new Thread(this, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public synchronized void stop() {
+		this.running = false;
+		if (this.thread != null) {
+			// Stopping the line makes a blocked read() return
+			this.targetDataLine.stop();
+			try {
+				this.thread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+		}
+	}
+
+	/**
+	 * Returns and resets the number of bytes dropped because the ring buffer was full.
+	 */
+	public long takeDroppedBytes() {
+		return this.droppedBytes.getAndSet(0);
+	}
+
+	/**
+	 * Returns and forgets the number of frames missing from the ring buffer at or before
+	 * the given ring position, which could not be replaced by silence because the gap
+	 * was longer than the buffer.
+	 */
+	public long takeSkippedFrames(long position) {
+		long frames = 0;
+		long[] skip;
+		while ((skip = this.skips.peek()) != null && skip[0] <= position) {
+			frames += skip[1];
+			this.skips.poll();
+		}
+		return frames;
+	}
+
+	/**
+	 * Returns the ring position of the oldest gap not yet taken, or -1 if there is none.
+	 * Frames from this position on have a higher offset than their position suggests.
+	 */
+	public long getNextSkipPosition() {
+		long[] skip = this.skips.peek();
+		return skip != null ? skip[0] : -1;
+	}
+
+	@Override
+	public void run() {
+		logger.debug("Capture thread started");
+		while (this.running) {
+			int bytesRead = this.targetDataLine.read(this.chunk, 0, this.chunk.length);
+			if (bytesRead <= 0) {
+				if (!this.targetDataLine.isOpen()) {
+					break;
+				}
+				continue;
+			}
+			long frames = bytesRead / this.frameSize;
+			long lineFrames = this.targetDataLine.getLongFramePosition() - this.targetDataLine.available() / this.frameSize;
+			long lostFrames = lineFrames - (this.accountedFrames + frames);
+			if (lostFrames > this.gapToleranceFrames) {
+				logger.warn("Line lost {} frames, filling with silence", lostFrames);
+				this.pendingSilenceFrames += lostFrames;
+				this.accountedFrames += lostFrames;
+			}
+			this.accountedFrames += frames;
+			writePendingSilence();
+			if (this.pendingSilenceFrames > 0 || !this.ringBuffer.write(this.chunk, 0, bytesRead)) {
+				this.droppedBytes.addAndGet(bytesRead);
+				this.pendingSilenceFrames += frames;
+			}
+		}
+		logger.debug("Capture thread stopped");
+	}
+
+	private void writePendingSilence() {
+		long maxFrames = this.ringBuffer.capacity() / this.frameSize;
+		if (this.pendingSilenceFrames > maxFrames) {
+			// Published before the ring position moves past the gap
+			this.skips.add(new long[] { this.ringBuffer.getWritePosition(), this.pendingSilenceFrames - maxFrames });
+			this.pendingSilenceFrames = maxFrames;
+		}
+		while (this.pendingSilenceFrames > 0) {
+			int frames = (int) Math.min(this.pendingSilenceFrames,
+					Math.min(this.silence.length, this.ringBuffer.free()) / this.frameSize);
+			if (frames == 0 || !this.ringBuffer.write(this.silence, 0, frames * this.frameSize)) {
+				return;
+			}
+			this.pendingSilenceFrames -= frames;
+		}
+	}
+}
@@ -4,15 +4,12 @@ import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.TargetDataLine;
 
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.type.TypedValue;
@@ -36,8 +33,10 @@ public class AudioCollector implements WireEmitter, WireReceiver, ConfigurableCo
     private volatile WireHelperService wireHelperService;
 	private WireSupport wireSupport;
 	
+	private static final String CAPTURE_MODE_THREADED = "threaded";
+	
 	private AudioCollectorOptions options;
-	private TargetDataLine targetDataLine;
+	private volatile List<AudioCaptureDevice> captureDevices = Collections.emptyList();
 
 	public void bindWireHelperService(final WireHelperService wireHelperService) {
         if (isNull(this.wireHelperService)) {
@@ -79,36 +78,32 @@ public class AudioCollector implements WireEmitter, WireReceiver, ConfigurableCo
 		logger.debug("Received wire envelope from {}", wireEnvelope.getEmitterPid());
 		long envelopeTimer = System.currentTimeMillis();
 
-		int bufferSize = this.targetDataLine.getBufferSize();
-		byte[] audioData = new byte[bufferSize];
-		int availableBytes = this.targetDataLine.available();
-		int bytesRead = this.targetDataLine.read(audioData, 0, availableBytes);
-		long now = System.currentTimeMillis();
-		logger.debug("Read {} of {} available bytes into buffer of size {}", bytesRead, availableBytes, bufferSize);
-		if (availableBytes == bufferSize) {
-			logger.warn("Buffer size exceeded, some audio data was lost");
-		}
-    	
 		Float sampleRate = this.options.getSampleRate();
 		Integer sampleSize = this.options.getSampleSize();
 
-    	final Map<String, TypedValue<?>> properties = new HashMap<>();
-    	properties.put(AudioWireRecordProperties.SOURCE, TypedValues.newStringValue(this.options.getKuraServicePid()));
-    	properties.put(AudioWireRecordProperties.TIMESTAMP, TypedValues.newLongValue(
-    			now - bytesRead * 8000 / (sampleSize * sampleRate.longValue())));
-    	properties.put(AudioWireRecordProperties.AUDIO_DATA, TypedValues.newByteArrayValue(audioData));
-    	properties.put(AudioWireRecordProperties.BIG_ENDIAN, TypedValues.newBooleanValue(this.options.isBigEndian()));
-    	properties.put(AudioWireRecordProperties.CHANNELS, TypedValues.newIntegerValue(this.options.getChannels()));
-    	properties.put(AudioWireRecordProperties.SAMPLE_RATE, TypedValues.newFloatValue(sampleRate));
-    	properties.put(AudioWireRecordProperties.SAMPLE_SIZE, TypedValues.newIntegerValue(sampleSize));
-    	properties.put(AudioWireRecordProperties.SIGNED, TypedValues.newBooleanValue(this.options.isSigned()));
-    	
-    	final WireRecord audioCollectorWireRecord = new WireRecord(properties);
     	final List<WireRecord> audioCollectorWireRecords = new ArrayList<>();
-    	audioCollectorWireRecords.add(audioCollectorWireRecord);
+		for (AudioCaptureDevice captureDevice : this.captureDevices) {
+			byte[] audioData = captureDevice.read();
+			
+	    	final Map<String, TypedValue<?>> properties = new HashMap<>();
+	    	properties.put(AudioWireRecordProperties.SOURCE, TypedValues.newStringValue(captureDevice.getSource()));
+	    	properties.put(AudioWireRecordProperties.TIMESTAMP, TypedValues.newLongValue(captureDevice.getLastTimestamp()));
+	    	properties.put(AudioWireRecordProperties.FRAME_OFFSET, TypedValues.newLongValue(captureDevice.getLastFrameOffset()));
+	    	properties.put(AudioWireRecordProperties.AUDIO_DATA, TypedValues.newByteArrayValue(audioData));
+	    	properties.put(AudioWireRecordProperties.BIG_ENDIAN, TypedValues.newBooleanValue(this.options.isBigEndian()));
+	    	properties.put(AudioWireRecordProperties.CHANNELS, TypedValues.newIntegerValue(this.options.getChannels()));
+	    	properties.put(AudioWireRecordProperties.SAMPLE_RATE, TypedValues.newFloatValue(sampleRate));
+	    	properties.put(AudioWireRecordProperties.SAMPLE_SIZE, TypedValues.newIntegerValue(sampleSize));
+	    	properties.put(AudioWireRecordProperties.SIGNED, TypedValues.newBooleanValue(this.options.isSigned()));
+	    	
+	    	final WireRecord audioCollectorWireRecord = new WireRecord(properties);
+	    	audioCollectorWireRecords.add(audioCollectorWireRecord);
+		}
     	logger.debug("Envelope took {}ms to process", System.currentTimeMillis() - envelopeTimer);
         logger.debug("Emitting {} record(s)...", audioCollectorWireRecords.size());
-    	wireSupport.emit(audioCollectorWireRecords);
+        if (!audioCollectorWireRecords.isEmpty()) {
+        	wireSupport.emit(audioCollectorWireRecords);
+        }
     	logger.debug("Emitting...done");
 	}
 
@@ -145,32 +140,28 @@ public class AudioCollector implements WireEmitter, WireReceiver, ConfigurableCo
 				this.options.getChannels(),
 				this.options.isSigned(),
 				this.options.isBigEndian());
-		DataLine.Info info = new DataLine.Info(TargetDataLine.class, audioFormat);
-		if (AudioSystem.isLineSupported(info)) {
-			try {
-				logger.debug("Obtaining line...");
-				this.targetDataLine = (TargetDataLine) AudioSystem.getLine(info);
-				logger.debug("Obtaining line...Done");
-				logger.debug("Opening line...");
-				this.targetDataLine.open(audioFormat, this.options.getBufferSize());
-				logger.debug("Opening line...Done");
-				logger.debug("Starting line...");
-				this.targetDataLine.start();
-				logger.debug("Starting line...Done");
-			} catch (LineUnavailableException e) {
-				logger.error("Cannot create/open line: {}", audioFormat.toString());
+		Integer ringBufferSize = CAPTURE_MODE_THREADED.equals(this.options.getCaptureMode()) ?
+				this.options.getRingBufferSize() : null;
+		List<String> mixerNames = this.options.getMixerNames();
+		List<AudioCaptureDevice> captureDevices = new ArrayList<>();
+		for (String mixerName : mixerNames) {
+			// A single device keeps the plain service pid as source for compatibility
+			String source = mixerNames.size() > 1 ?
+					this.options.getKuraServicePid() + "/" + mixerName : this.options.getKuraServicePid();
+			AudioCaptureDevice captureDevice = new AudioCaptureDevice(mixerName, source);
+			if (captureDevice.open(audioFormat, this.options.getBufferSize(), this.options.getVolumeLevel(), ringBufferSize)) {
+				captureDevices.add(captureDevice);
 			}
-		} else {
-			logger.error("Line is not supported: {}", audioFormat.toString());
-			this.targetDataLine = null;
 		}
+		this.captureDevices = captureDevices;
+		logger.debug("Recording from {} of {} mixer(s)", captureDevices.size(), mixerNames.size());
 	}
 	
 	private void stopRecording() {
-		logger.debug("Closing line...");
-		this.targetDataLine.stop();
-		this.targetDataLine.close();
-		this.targetDataLine = null;
-		logger.debug("Closing line...Done");
+		List<AudioCaptureDevice> captureDevices = this.captureDevices;
+		this.captureDevices = Collections.emptyList();
+		for (AudioCaptureDevice captureDevice : captureDevices) {
+			captureDevice.close();
+		}
 	}
 }
@@ -3,6 +3,8 @@ package de.db.i4i.kura.wire.audio.collector;
 import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.kura.configuration.ConfigurationService;
@@ -17,6 +19,8 @@ public class AudioCollectorOptions {
 	private static final String SIGNED = "signed";
 	private static final String BIG_ENDIAN = "big.endian";
 	private static final String BUFFER_SIZE = "buffer.size";
+	private static final String CAPTURE_MODE = "capture.mode";
+	private static final String RING_BUFFER_SIZE = "ring.buffer.size";
 	private static final String KURA_SERVICE_PID = ConfigurationService.KURA_SERVICE_PID;
 	
 	private final Map<String, Object> properties;
@@ -35,6 +39,22 @@ public class AudioCollectorOptions {
 		return mixerName;
 	}
 	
+	List<String> getMixerNames() {
+		List<String> mixerNames = new ArrayList<>();
+		String mixerName = getMixerName();
+		if (nonNull(mixerName)) {
+			for (String name : mixerName.split(",")) {
+				if (!name.trim().isEmpty()) {
+					mixerNames.add(name.trim());
+				}
+			}
+		}
+		if (mixerNames.isEmpty()) {
+			mixerNames.add(null);
+		}
+		return mixerNames;
+	}
+	
 	Float getVolumeLevel() {
 		Float volumeLevel = null;
 		final Object vl = this.properties.get(VOLUME_LEVEL);
@@ -98,6 +118,24 @@ public class AudioCollectorOptions {
         return bufferSize;
 	}
 	
+	String getCaptureMode() {
+		String captureMode = null;
+		final Object cm = this.properties.get(CAPTURE_MODE);
+		if (nonNull(cm) && (cm instanceof String)) {
+			captureMode = (String) cm;
+		}
+		return captureMode;
+	}
+	
+	Integer getRingBufferSize() {
+		Integer ringBufferSize = null;
+		final Object rbs = this.properties.get(RING_BUFFER_SIZE);
+		if (nonNull(rbs) && (rbs instanceof Integer)) {
+            ringBufferSize = (Integer) rbs;
+        }
+        return ringBufferSize;
+	}
+	
 	String getKuraServicePid() {
 		String kuraServicePid = null;
 		final Object ksp = this.properties.get(KURA_SERVICE_PID);
@@ -0,0 +1,83 @@
+package de.db.i4i.kura.wire.audio.collector;
+
+/**
+ * Single-producer/single-consumer byte ring buffer.
+ *
+ * The capture thread is the only writer and the wire thread the only reader, so
+ * the two positions can be published through volatile fields without locking.
+ * Positions are absolute byte counts, the array index is derived from them.
+ */
+public class AudioRingBuffer {
+
+	private final byte[] buffer;
+	private final int capacity;
+
+	private volatile long writePosition = 0;
+	private volatile long readPosition = 0;
+
+	public AudioRingBuffer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.buffer = new byte[capacity];
+	}
+
+	public int capacity() {
+		return this.capacity;
+	}
+
+	public int available() {
+		return (int) (this.writePosition - this.readPosition);
+	}
+
+	public int free() {
+		return this.capacity - available();
+	}
+
+	public long getReadPosition() {
+		return this.readPosition;
+	}
+
+	public long getWritePosition() {
+		return this.writePosition;
+	}
+
+	/**
+	 * Called by the producer only. Writes all or nothing.
+	 *
+	 * @return false if there was not enough free space for len bytes
+	 */
+	public boolean write(byte[] src, int off, int len) {
+		long write = this.writePosition;
+		if (this.capacity - (int) (write - this.readPosition) < len) {
+			return false;
+		}
+		int index = (int) (write % this.capacity);
+		int first = Math.min(len, this.capacity - index);
+		System.arraycopy(src, off, this.buffer, index, first);
+		if (first < len) {
+			System.arraycopy(src, off + first, this.buffer, 0, len - first);
+		}
+		this.writePosition = write + len;
+		return true;
+	}
+
+	/**
+	 * Called by the consumer only.
+	 *
+	 * @return the number of bytes actually read
+	 */
+	public int read(byte[] dst, int off, int len) {
+		long read = this.readPosition;
+		int n = Math.min(len, (int) (this.writePosition - read));
+		int index = (int) (read % this.capacity);
+		int first = Math.min(n, this.capacity - index);
+		System.arraycopy(this.buffer, index, dst, off, first);
+		if (first < n) {
+			System.arraycopy(this.buffer, 0, dst, off + first, n - first);
+		}
+		this.readPosition = read + n;
+		return n;
+	}
+}
@@ -3,15 +3,11 @@ package de.db.i4i.kura.wire.audio.concatenator;
 import static java.util.Objects.isNull;
 import static java.util.Objects.requireNonNull;
 
-import java.nio.BufferOverflowException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.sound.sampled.AudioFormat;
-
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.type.DataType;
 import org.eclipse.kura.type.TypedValue;
@@ -36,7 +32,7 @@ private static final Logger logger = LoggerFactory.getLogger(AudioConcatenator.c
 	private WireSupport wireSupport;
 	
 	private AudioConcatenatorOptions options;
-	private Map<String, ByteBuffer> audioBuffers;
+	private AudioSourceRegistry sourceRegistry;
 	
 	public void bindWireHelperService(final WireHelperService wireHelperService) {
         if (isNull(this.wireHelperService)) {
@@ -54,7 +50,8 @@ private static final Logger logger = LoggerFactory.getLogger(AudioConcatenator.c
 		logger.debug("Activating AudioConcatenator...");
 		wireSupport = this.wireHelperService.newWireSupport(this);
         this.extractProperties(properties);
-        this.audioBuffers = new HashMap<String, ByteBuffer>();
+        this.sourceRegistry = new AudioSourceRegistry(this.options.getMemoryBudget(),
+        		this.options.getSourceIdleTimeout() * 1000L);
         logger.debug("Activating AudioConcatenator... Done");
 	}
 	
@@ -66,7 +63,8 @@ private static final Logger logger = LoggerFactory.getLogger(AudioConcatenator.c
 	public synchronized void updated(final Map<String, Object> properties) {
 		logger.debug("Updating AudioConcatenator...");
         this.extractProperties(properties);
-        this.audioBuffers = new HashMap<String, ByteBuffer>();
+        this.sourceRegistry = new AudioSourceRegistry(this.options.getMemoryBudget(),
+        		this.options.getSourceIdleTimeout() * 1000L);
         logger.debug("Updating AudioConcatenator... Done");
 	}
 
@@ -97,9 +95,11 @@ private static final Logger logger = LoggerFactory.getLogger(AudioConcatenator.c
 		long envelopeTimer = System.currentTimeMillis();
 		
 		final List<WireRecord> audioCollectorRecords = new ArrayList<>();
+		this.sourceRegistry.evictIdle(envelopeTimer);
 		for (WireRecord record : wireEnvelope.getRecords()) {
 			String source = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.SOURCE);
             long timestamp = (long) getPropertyValue(record, DataType.LONG, AudioWireRecordProperties.TIMESTAMP);
+            Long frameOffset = (Long) getPropertyValue(record, DataType.LONG, AudioWireRecordProperties.FRAME_OFFSET);
             byte[] audioData = (byte[]) getPropertyValue(record, DataType.BYTE_ARRAY, AudioWireRecordProperties.AUDIO_DATA);
             Float sampleRate = (Float) getPropertyValue(record, DataType.FLOAT, AudioWireRecordProperties.SAMPLE_RATE);
             Integer sampleSize = (Integer) getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.SAMPLE_SIZE);
@@ -116,54 +116,99 @@ private static final Logger logger = LoggerFactory.getLogger(AudioConcatenator.c
             requireNonNull(signed, "No signed flag found");
             requireNonNull(bigEndian, "No big-endian flag found");
             
-            AudioFormat audioFormat = new AudioFormat(sampleRate,
-					  sampleSize,
-					  channels,
-					  signed,
-					  bigEndian);
-            String key = source + ", " + audioFormat.toString();
-            ByteBuffer audioBuffer;
+            AudioSourceState state = this.sourceRegistry.get(source, sampleRate, sampleSize, channels, signed, bigEndian,
+            		this.options.getConcatenationDuration(), this.options.getHopDuration(), envelopeTimer);
+            if (state == null) {
+            	continue;
+            }
+            AudioWindowBuffer audioBuffer = state.getBuffer();
             Integer concatenationDuration = this.options.getConcatenationDuration();
-            Integer bytesPerSecond = sampleRate.intValue() * sampleSize / 8;
-            Integer numberOfBytes = concatenationDuration * bytesPerSecond;
-            byte[] concatenatedAudioData = new byte[numberOfBytes];
-            if (this.audioBuffers.containsKey(key)) {
-            	audioBuffer = audioBuffers.get(key);
-            } else {
-            	audioBuffer = ByteBuffer.allocate(5 * numberOfBytes);
-            	audioBuffers.put(key, audioBuffer);
+            int frameSize = state.getFrameSize();
+            int bytesPerSecond = state.getBytesPerSecond();
+            int numberOfBytes = state.getWindowBytes();
+            int hopBytes = state.getHopBytes();
+            int audioDataOffset = 0;
+            int silenceBytes = 0;
+            long endFrameOffset = 0;
+            if (frameOffset != null) {
+            	// Place the audio by its frame offset, fill gaps with silence and drop overlaps
+            	long frames = audioData.length / frameSize;
+            	Long nextFrameOffset = state.getNextFrameOffset();
+            	if (nextFrameOffset != null && frameOffset != nextFrameOffset.longValue()) {
+            		long gapFrames = frameOffset - nextFrameOffset;
+            		if (gapFrames > 0 && gapFrames * frameSize <= numberOfBytes) {
+            			logger.warn("Source {}: {} frames missing, filling with silence", source, gapFrames);
+            			silenceBytes = (int) gapFrames * frameSize;
+            		} else if (gapFrames < 0 && -gapFrames < frames) {
+            			logger.warn("Source {}: {} frames received twice, dropping them", source, -gapFrames);
+            			audioDataOffset = (int) -gapFrames * frameSize;
+            		} else if (gapFrames < 0 && -gapFrames * frameSize <= numberOfBytes + audioData.length) {
+            			// Ends before the next expected frame, but at most a window before it, nothing to add
+            			logger.warn("Source {}: Dropping duplicate or late record at frame offset {}", source, frameOffset);
+            			continue;
+            		} else {
+            			// A source that restarted counts from 0 again, so a long jump back restarts as well
+            			logger.warn("Source {}: Frame offset jumped from {} to {}, restarting concatenation",
+            					source, nextFrameOffset, frameOffset);
+            			audioBuffer.clear();
+            		}
+            	}
+            	// Frame offset of the next byte written to the buffer
+            	endFrameOffset = frameOffset + (audioDataOffset - silenceBytes) / frameSize;
+            	state.setNextFrameOffset(frameOffset + frames);
             }
-            try {
-				audioBuffer.put(audioData);
-			} catch (BufferOverflowException e) {
-				logger.warn("Source {}: Buffer capacity ({} bytes) exceeded trying to put {} bytes",
-						source, audioBuffer.capacity(), audioData.clone().length);
-			}
-            logger.debug("Source {}: Buffer contains {} seconds of audio ({} bytes)",
-        			source,
-        			audioBuffer.position() * 8 / sampleSize / sampleRate, audioBuffer.position());
-            if (audioBuffer.position() >= numberOfBytes) {
-            	logger.debug("Target buffer size reached. Flipping buffer.");
-            	audioBuffer.flip();
-            	logger.debug("Reading {} bytes from buffer", numberOfBytes);
-            	audioBuffer.get(concatenatedAudioData, 0, numberOfBytes);
-            	logger.debug("Compacting buffer");
-            	audioBuffer.compact();
-            	final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
-            	properties.replace(AudioWireRecordProperties.AUDIO_DATA, TypedValues.newByteArrayValue(concatenatedAudioData));
-            	// Guess timestamp, this will fail if wire records were lost
-            	long newTimestamp = timestamp - (concatenationDuration * 1000) +
-            			audioBuffer.position() * 8000 / sampleSize / sampleRate.longValue();
-            	properties.replace(AudioWireRecordProperties.TIMESTAMP, TypedValues.newLongValue(newTimestamp));
-            	final WireRecord audioCollectorWireRecord = new WireRecord(properties);
-            	logger.debug("Creating output record for source {}, {} seconds ({} bytes) of audio left in buffer",
+            // Write in pieces that fit and emit each window as soon as it is complete
+            while (silenceBytes > 0 || audioDataOffset < audioData.length) {
+            	int bytesWritten;
+            	if (silenceBytes > 0) {
+            		bytesWritten = audioBuffer.writeSilence(silenceBytes, sampleSize, signed, bigEndian);
+            		silenceBytes -= bytesWritten;
+            	} else {
+            		bytesWritten = audioBuffer.write(audioData, audioDataOffset, audioData.length - audioDataOffset);
+            		audioDataOffset += bytesWritten;
+            	}
+            	endFrameOffset += bytesWritten / frameSize;
+            	logger.debug("Source {}: Buffer contains {} seconds of audio ({} bytes)",
             			source,
-            			audioBuffer.position() * 8 / sampleSize / sampleRate,
-            			audioBuffer.position());
-            	audioCollectorRecords.add(audioCollectorWireRecord);
+            			(float) audioBuffer.size() / bytesPerSecond, audioBuffer.size());
+            	while (audioBuffer.size() >= numberOfBytes) {
+            		logger.debug("Target buffer size reached. Reading {} bytes from buffer", numberOfBytes);
+            		byte[] concatenatedAudioData = new byte[numberOfBytes];
+            		long windowFrameOffset = endFrameOffset - audioBuffer.size() / frameSize;
+            		audioBuffer.peek(concatenatedAudioData, numberOfBytes);
+            		audioBuffer.skip(hopBytes);
+            		final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
+            		properties.replace(AudioWireRecordProperties.AUDIO_DATA, TypedValues.newByteArrayValue(concatenatedAudioData));
+            		long newTimestamp;
+            		if (frameOffset != null) {
+            			newTimestamp = timestamp + (long) ((windowFrameOffset - frameOffset) * 1000.0 / sampleRate);
+            			properties.put(AudioWireRecordProperties.FRAME_OFFSET, TypedValues.newLongValue(windowFrameOffset));
+            		} else {
+            			// Guess timestamp, this will fail if wire records were lost
+            			newTimestamp = timestamp - (concatenationDuration * 1000) +
+            					audioDataOffset * 1000L / bytesPerSecond;
+            		}
+            		properties.replace(AudioWireRecordProperties.TIMESTAMP, TypedValues.newLongValue(newTimestamp));
+            		properties.put(AudioWireRecordProperties.BUFFER_OCCUPANCY, TypedValues.newIntegerValue(audioBuffer.size()));
+            		final WireRecord audioCollectorWireRecord = new WireRecord(properties);
+            		logger.debug("Creating output record for source {}, {} seconds ({} bytes) of audio left in buffer",
+            				source,
+            				(float) audioBuffer.size() / bytesPerSecond,
+            				audioBuffer.size());
+            		audioCollectorRecords.add(audioCollectorWireRecord);
+            	}
+            	if (bytesWritten == 0) {
+            		logger.warn("Source {}: Dropping {} bytes that do not form a whole frame",
+            				source, audioData.length - audioDataOffset);
+            		break;
+            	}
             }
         }
 		Integer numberOfRecords = audioCollectorRecords.size();
+		if (logger.isDebugEnabled()) {
+			logger.debug("Buffer occupancy: {} ({} bytes allocated)", this.sourceRegistry.getBufferOccupancy(),
+					this.sourceRegistry.getUsedBytes());
+		}
 		logger.debug("Envelope took {}ms to process", System.currentTimeMillis() - envelopeTimer);
 		logger.debug("Emitting {} record(s)...", numberOfRecords);
 		if (numberOfRecords > 0) {
@@ -179,7 +224,7 @@ private static final Logger logger = LoggerFactory.getLogger(AudioConcatenator.c
 	
 	private Object getPropertyValue(WireRecord record, DataType expectedType, String propertyName) {
 		TypedValue<?> property = record.getProperties().get(propertyName);
-		if (property.getType() == expectedType) {
+		if (property != null && property.getType() == expectedType) {
 			return property.getValue();
 		} else {
 			return null;
@@ -8,6 +8,9 @@ import java.util.Map;
 public class AudioConcatenatorOptions {
 	
 	private static final String CONCATENATION_DURATION = "concatenation.duration";
+	private static final String HOP_DURATION = "hop.duration";
+	private static final String MEMORY_BUDGET = "memory.budget";
+	private static final String SOURCE_IDLE_TIMEOUT = "source.idle.timeout";
 	
 	private final Map<String, Object> properties;
 	
@@ -25,4 +28,30 @@ public class AudioConcatenatorOptions {
         return concatenationDuration;
 	}
 
+	Integer getHopDuration() {
+		Integer hopDuration = null;
+		final Object hd = this.properties.get(HOP_DURATION);
+		if (nonNull(hd) && (hd instanceof Integer)) {
+            hopDuration = (Integer) hd;
+        }
+        return hopDuration;
+	}
+	
+	Integer getMemoryBudget() {
+		Integer memoryBudget = null;
+		final Object mb = this.properties.get(MEMORY_BUDGET);
+		if (nonNull(mb) && (mb instanceof Integer)) {
+            memoryBudget = (Integer) mb;
+        }
+        return memoryBudget;
+	}
+	
+	Integer getSourceIdleTimeout() {
+		Integer sourceIdleTimeout = null;
+		final Object sit = this.properties.get(SOURCE_IDLE_TIMEOUT);
+		if (nonNull(sit) && (sit instanceof Integer)) {
+            sourceIdleTimeout = (Integer) sit;
+        }
+        return sourceIdleTimeout;
+	}
 }
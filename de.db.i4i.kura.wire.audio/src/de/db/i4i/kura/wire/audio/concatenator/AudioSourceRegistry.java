@@ -0,0 +1,110 @@
+package de.db.i4i.kura.wire.audio.concatenator;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the {@link AudioSourceState} of every source within a global byte budget.
+ *
+ * States are looked up by source only, a format change replaces the state. Sources
+ * that have been idle longer than the timeout are evicted, and if a new source does
+ * not fit into the budget the least recently used sources make room for it. A budget
+ * of 0 or less is unlimited.
+ */
+public class AudioSourceRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(AudioSourceRegistry.class);
+
+	private final long memoryBudget;
+	private final long idleTimeout;
+	// Access order, so iteration starts with the least recently used source
+	private final LinkedHashMap<String, AudioSourceState> states = new LinkedHashMap<>(16, 0.75f, true);
+	private long usedBytes = 0;
+
+	public AudioSourceRegistry(long memoryBudget, long idleTimeout) {
+		this.memoryBudget = memoryBudget > 0 ? memoryBudget : Long.MAX_VALUE;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Returns the state for the source, creating it if necessary.
+	 *
+	 * @return null if the source does not fit into the memory budget
+	 */
+	public AudioSourceState get(String source, float sampleRate, int sampleSize, int channels, boolean signed,
+			boolean bigEndian, int windowDuration, Integer hopDuration, long now) {
+		AudioSourceState state = this.states.get(source);
+		if (state != null && !state.hasFormat(sampleRate, sampleSize, channels, signed, bigEndian)) {
+			logger.info("Source {}: Audio format changed, discarding buffered audio", source);
+			remove(source);
+			state = null;
+		}
+		if (state == null) {
+			state = new AudioSourceState(source, sampleRate, sampleSize, channels, signed, bigEndian,
+					windowDuration, hopDuration);
+			int requiredBytes = state.getBuffer().capacity();
+			Iterator<AudioSourceState> lru = this.states.values().iterator();
+			while (this.usedBytes + requiredBytes > this.memoryBudget && lru.hasNext()) {
+				AudioSourceState evicted = lru.next();
+				logger.warn("Source {}: Evicted to stay within memory budget of {} bytes",
+						evicted.getSource(), this.memoryBudget);
+				this.usedBytes -= evicted.getBuffer().capacity();
+				lru.remove();
+			}
+			if (this.usedBytes + requiredBytes > this.memoryBudget) {
+				logger.error("Source {}: Window of {} bytes exceeds memory budget of {} bytes",
+						source, requiredBytes, this.memoryBudget);
+				return null;
+			}
+			this.states.put(source, state);
+			this.usedBytes += requiredBytes;
+		}
+		state.setLastAccess(now);
+		return state;
+	}
+
+	public void evictIdle(long now) {
+		if (this.idleTimeout <= 0) {
+			return;
+		}
+		Iterator<AudioSourceState> iterator = this.states.values().iterator();
+		while (iterator.hasNext()) {
+			AudioSourceState state = iterator.next();
+			if (now - state.getLastAccess() <= this.idleTimeout) {
+				// Access order, all remaining sources are more recent
+				break;
+			}
+			logger.info("Source {}: Idle for more than {}ms, discarding buffered audio",
+					state.getSource(), this.idleTimeout);
+			this.usedBytes -= state.getBuffer().capacity();
+			iterator.remove();
+		}
+	}
+
+	public void remove(String source) {
+		AudioSourceState state = this.states.remove(source);
+		if (state != null) {
+			this.usedBytes -= state.getBuffer().capacity();
+		}
+	}
+
+	public long getUsedBytes() {
+		return this.usedBytes;
+	}
+
+	/**
+	 * Returns the number of bytes currently buffered per source.
+	 */
+	public Map<String, Integer> getBufferOccupancy() {
+		Map<String, Integer> occupancy = new HashMap<>();
+		for (AudioSourceState state : this.states.values()) {
+			occupancy.put(state.getSource(), state.getBuffer().size());
+		}
+		return occupancy;
+	}
+}
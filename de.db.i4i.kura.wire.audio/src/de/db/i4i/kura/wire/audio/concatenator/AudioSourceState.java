@@ -0,0 +1,88 @@
+package de.db.i4i.kura.wire.audio.concatenator;
+
+/**
+ * Concatenation state of one source: its audio format, window geometry and buffered audio.
+ */
+public class AudioSourceState {
+
+	private final String source;
+	private final float sampleRate;
+	private final int sampleSize;
+	private final int channels;
+	private final boolean signed;
+	private final boolean bigEndian;
+	private final int frameSize;
+	private final int bytesPerSecond;
+	private final int windowBytes;
+	private final int hopBytes;
+	private final AudioWindowBuffer buffer;
+
+	private Long nextFrameOffset;
+	private long lastAccess;
+
+	public AudioSourceState(String source, float sampleRate, int sampleSize, int channels, boolean signed,
+			boolean bigEndian, int windowDuration, Integer hopDuration) {
+		this.source = source;
+		this.sampleRate = sampleRate;
+		this.sampleSize = sampleSize;
+		this.channels = channels;
+		this.signed = signed;
+		this.bigEndian = bigEndian;
+		this.frameSize = channels * ((sampleSize + 7) / 8);
+		this.bytesPerSecond = (int) sampleRate * this.frameSize;
+		this.windowBytes = windowDuration * this.bytesPerSecond;
+		// Windows overlap by advancing less than a window, the overlap is kept in the buffer
+		int hop = this.windowBytes;
+		if (hopDuration != null && hopDuration > 0) {
+			hop = (int) Math.min(this.windowBytes, (long) hopDuration * (int) sampleRate / 1000 * this.frameSize);
+			hop = Math.max(hop, this.frameSize);
+		}
+		this.hopBytes = hop;
+		this.buffer = new AudioWindowBuffer(this.windowBytes, this.frameSize);
+	}
+
+	public boolean hasFormat(float sampleRate, int sampleSize, int channels, boolean signed, boolean bigEndian) {
+		return this.sampleRate == sampleRate && this.sampleSize == sampleSize && this.channels == channels
+				&& this.signed == signed && this.bigEndian == bigEndian;
+	}
+
+	public String getSource() {
+		return this.source;
+	}
+
+	public int getFrameSize() {
+		return this.frameSize;
+	}
+
+	public int getBytesPerSecond() {
+		return this.bytesPerSecond;
+	}
+
+	public int getWindowBytes() {
+		return this.windowBytes;
+	}
+
+	public int getHopBytes() {
+		return this.hopBytes;
+	}
+
+	public AudioWindowBuffer getBuffer() {
+		return this.buffer;
+	}
+
+	public Long getNextFrameOffset() {
+		return this.nextFrameOffset;
+	}
+
+	public void setNextFrameOffset(Long nextFrameOffset) {
+		this.nextFrameOffset = nextFrameOffset;
+	}
+
+	public long getLastAccess() {
+		return this.lastAccess;
+	}
+
+	public void setLastAccess(long lastAccess) {
+		this.lastAccess = lastAccess;
+	}
+}
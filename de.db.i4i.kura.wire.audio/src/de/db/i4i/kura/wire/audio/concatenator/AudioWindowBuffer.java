@@ -0,0 +1,97 @@
+package de.db.i4i.kura.wire.audio.concatenator;
+
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.fillSilence;
+
+/**
+ * Circular byte buffer holding the audio of one source until a window is complete.
+ *
+ * Writes are accepted in whole frames up to the free space, so the caller can emit
+ * windows in between and nothing is ever dropped. A window is copied out in at most
+ * two segments and the data is never moved inside the buffer.
+ */
+public class AudioWindowBuffer {
+
+	private final byte[] buffer;
+	private final int frameSize;
+	private int readIndex = 0;
+	private int size = 0;
+
+	public AudioWindowBuffer(int capacity, int frameSize) {
+		this.frameSize = frameSize;
+		this.buffer = new byte[capacity / frameSize * frameSize];
+	}
+
+	public int capacity() {
+		return this.buffer.length;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int free() {
+		return this.buffer.length - this.size;
+	}
+
+	public void clear() {
+		this.readIndex = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Appends as many whole frames of the given data as fit.
+	 *
+	 * @return the number of bytes appended
+	 */
+	public int write(byte[] src, int off, int len) {
+		int n = Math.min(len, free()) / this.frameSize * this.frameSize;
+		int writeIndex = (this.readIndex + this.size) % this.buffer.length;
+		int first = Math.min(n, this.buffer.length - writeIndex);
+		System.arraycopy(src, off, this.buffer, writeIndex, first);
+		if (first < n) {
+			System.arraycopy(src, off + first, this.buffer, 0, n - first);
+		}
+		this.size += n;
+		return n;
+	}
+
+	/**
+	 * Appends as many whole frames of silence as fit, up to len bytes.
+	 *
+	 * @return the number of bytes appended
+	 */
+	public int writeSilence(int len, int sampleSize, boolean signed, boolean bigEndian) {
+		int n = Math.min(len, free()) / this.frameSize * this.frameSize;
+		int writeIndex = (this.readIndex + this.size) % this.buffer.length;
+		int first = Math.min(n, this.buffer.length - writeIndex);
+		fillSilence(this.buffer, writeIndex, first, sampleSize, signed, bigEndian);
+		if (first < n) {
+			fillSilence(this.buffer, 0, n - first, sampleSize, signed, bigEndian);
+		}
+		this.size += n;
+		return n;
+	}
+
+	/**
+	 * Copies the oldest len bytes into dst without consuming them.
+	 */
+	public void peek(byte[] dst, int len) {
+		if (len > this.size) {
+			throw new IllegalArgumentException("Only " + this.size + " bytes buffered");
+		}
+		int first = Math.min(len, this.buffer.length - this.readIndex);
+		System.arraycopy(this.buffer, this.readIndex, dst, 0, first);
+		if (first < len) {
+			System.arraycopy(this.buffer, 0, dst, first, len - first);
+		}
+	}
+
+	/**
+	 * Discards the oldest len bytes.
+	 */
+	public void skip(int len) {
+		int n = Math.min(len, this.size);
+		this.readIndex = (this.readIndex + n) % this.buffer.length;
+		this.size -= n;
+	}
+}
@@ -0,0 +1,174 @@
+package de.db.i4i.kura.wire.audio.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precomputed tables for a real-input FFT of one power-of-two size.
+ *
+ * The real signal is packed into a complex signal of half the size, transformed with an
+ * iterative radix-2 FFT and split into the spectrum of the real signal. Plans are cached
+ * per size and immutable; the working arrays are kept per thread, so a transform does
+ * not allocate once a thread has used a size.
+ */
+public final class FftPlan {
+
+	private static final ConcurrentMap<Integer, FftPlan> plans = new ConcurrentHashMap<>();
+
+	private final int size;
+	private final int half;
+	// Twiddles of the half-size complex FFT
+	private final double[] cos;
+	private final double[] sin;
+	// Twiddles of the split into the real spectrum
+	private final double[] splitCos;
+	private final double[] splitSin;
+	private final int[] bitReversal;
+	private final double[] hannWindow;
+	private final ThreadLocal<double[][]> workspace;
+
+	private FftPlan(int size) {
+		this.size = size;
+		this.half = size / 2;
+		this.cos = new double[Math.max(this.half / 2, 1)];
+		this.sin = new double[this.cos.length];
+		for (int j = 0; j < this.half / 2; j++) {
+			this.cos[j] = Math.cos(2.0 * Math.PI * j / this.half);
+			this.sin[j] = Math.sin(2.0 * Math.PI * j / this.half);
+		}
+		this.splitCos = new double[this.half];
+		this.splitSin = new double[this.half];
+		for (int k = 0; k < this.half; k++) {
+			this.splitCos[k] = Math.cos(2.0 * Math.PI * k / size);
+			this.splitSin[k] = Math.sin(2.0 * Math.PI * k / size);
+		}
+		this.bitReversal = new int[this.half];
+		int bits = Integer.numberOfTrailingZeros(Math.max(this.half, 1));
+		for (int i = 0; i < this.half; i++) {
+			this.bitReversal[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+		}
+		// Same Hann window as jAudio's FFT, which spans the zero-padded length
+		this.hannWindow = new double[size];
+		for (int i = 0; i < size; i++) {
+			this.hannWindow[i] = 0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / size);
+		}
+		final int workspaceSize = Math.max(this.half, 1);
+		this.workspace = ThreadLocal.withInitial(() -> new double[2][workspaceSize]);
+	}
+
+	/**
+	 * Returns the cached plan for the given power-of-two size.
+	 */
+	public static FftPlan forSize(int size) {
+		if (size < 2 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size " + size + " is not a power of two");
+		}
+		FftPlan plan = plans.get(size);
+		if (plan == null) {
+			plan = plans.computeIfAbsent(size, FftPlan::new);
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns the smallest power of two that holds length samples.
+	 */
+	public static int getFftSize(int length) {
+		int size = Integer.highestOneBit(Math.max(length, 2));
+		return size < length ? size << 1 : size;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public int getBinCount() {
+		return this.half;
+	}
+
+	/**
+	 * Returns the Hann window over the whole FFT size. The array is shared and must not be modified.
+	 */
+	public double[] getHannWindow() {
+		return this.hannWindow;
+	}
+
+	/**
+	 * Writes |X[k]| / size for k < size / 2 into magnitudes, where X is the spectrum of
+	 * samples[offset, offset + length) weighted by window and zero-padded to the FFT size.
+	 * A null window means rectangular.
+	 */
+	public void magnitudeSpectrum(double[] samples, int offset, int length, double[] window, double[] magnitudes) {
+		magnitudeSpectrum(samples, offset, length, window, magnitudes, 0);
+	}
+
+	/**
+	 * Like {@link #magnitudeSpectrum(double[], int, int, double[], double[])}, writing to
+	 * magnitudes starting at magnitudesOffset.
+	 */
+	public void magnitudeSpectrum(double[] samples, int offset, int length, double[] window, double[] magnitudes,
+			int magnitudesOffset) {
+		if (length > this.size) {
+			throw new IllegalArgumentException("Cannot transform " + length + " samples with FFT size " + this.size);
+		}
+		double[][] ws = this.workspace.get();
+		double[] re = ws[0];
+		double[] im = ws[1];
+		// Even samples go to the real, odd samples to the imaginary part, in bit-reversed order
+		for (int m = 0; m < this.half; m++) {
+			int i = 2 * m;
+			double even = 0.0;
+			double odd = 0.0;
+			if (i < length) {
+				even = window == null ? samples[offset + i] : samples[offset + i] * window[i];
+			}
+			if (i + 1 < length) {
+				odd = window == null ? samples[offset + i + 1] : samples[offset + i + 1] * window[i + 1];
+			}
+			int r = this.bitReversal[m];
+			re[r] = even;
+			im[r] = odd;
+		}
+		transform(re, im);
+		double scale = 1.0 / this.size;
+		for (int k = 0; k < this.half; k++) {
+			int m = k == 0 ? 0 : this.half - k;
+			double a = re[k];
+			double b = im[k];
+			double c = re[m];
+			double d = im[m];
+			double evenRe = 0.5 * (a + c);
+			double evenIm = 0.5 * (b - d);
+			double oddRe = 0.5 * (b + d);
+			double oddIm = -0.5 * (a - c);
+			double wc = this.splitCos[k];
+			double wsin = this.splitSin[k];
+			double xr = evenRe + wc * oddRe + wsin * oddIm;
+			double xi = evenIm + wc * oddIm - wsin * oddRe;
+			magnitudes[magnitudesOffset + k] = Math.sqrt(xr * xr + xi * xi) * scale;
+		}
+	}
+
+	// In-place radix-2 decimation-in-time FFT of bit-reversed input
+	private void transform(double[] re, double[] im) {
+		int n = this.half;
+		for (int len = 2; len <= n; len <<= 1) {
+			int halfLen = len >> 1;
+			int step = n / len;
+			for (int start = 0; start < n; start += len) {
+				for (int j = 0; j < halfLen; j++) {
+					double wr = this.cos[j * step];
+					double wi = -this.sin[j * step];
+					int p = start + j;
+					int q = p + halfLen;
+					double tr = wr * re[q] - wi * im[q];
+					double ti = wr * im[q] + wi * re[q];
+					re[q] = re[p] - tr;
+					im[q] = im[p] - ti;
+					re[p] += tr;
+					im[p] += ti;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package de.db.i4i.kura.wire.audio.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precomputed mel filterbank and DCT matrix turning a magnitude spectrum into MFCCs.
+ *
+ * The filters are triangles of peak 1 whose edges and centres are spaced evenly on the
+ * mel scale between the minimum and maximum frequency. Only the non-zero part of every
+ * filter is stored. Log filter energies are floored at -50 like jAudio's MFCC, the DCT-II
+ * is unnormalized. Plans are cached per parameter set and immutable.
+ */
+public final class MfccPlan {
+
+	private static final double LOG_FLOOR = -50.0;
+
+	private static final ConcurrentMap<String, MfccPlan> plans = new ConcurrentHashMap<>();
+
+	private final int binCount;
+	private final int filters;
+	private final int coefficients;
+	private final int[] filterStart;
+	private final double[][] filterWeights;
+	// coefficients x filters, row major
+	private final double[] dct;
+	private final ThreadLocal<double[]> energies;
+
+	private MfccPlan(double sampleRate, int binCount, int filters, int coefficients, double minFrequency,
+			double maxFrequency) {
+		this.binCount = binCount;
+		this.filters = filters;
+		this.coefficients = coefficients;
+		// The spectrum holds the bins below Nyquist of an FFT of twice its length
+		double binWidth = sampleRate / (2.0 * binCount);
+		double minMel = toMel(minFrequency);
+		double maxMel = toMel(Math.min(maxFrequency, sampleRate / 2.0));
+		double[] edges = new double[filters + 2];
+		for (int i = 0; i < edges.length; i++) {
+			edges[i] = fromMel(minMel + (maxMel - minMel) * i / (filters + 1)) / binWidth;
+		}
+		this.filterStart = new int[filters];
+		this.filterWeights = new double[filters][];
+		for (int j = 0; j < filters; j++) {
+			double lower = edges[j];
+			double centre = edges[j + 1];
+			double upper = edges[j + 2];
+			int start = Math.max((int) Math.ceil(lower), 0);
+			int end = Math.min((int) Math.floor(upper), binCount - 1);
+			double[] weights = new double[Math.max(end - start + 1, 0)];
+			for (int k = start; k <= end; k++) {
+				double weight = k <= centre ? (k - lower) / (centre - lower) : (upper - k) / (upper - centre);
+				weights[k - start] = Math.max(weight, 0.0);
+			}
+			this.filterStart[j] = start;
+			this.filterWeights[j] = weights;
+		}
+		this.dct = new double[coefficients * filters];
+		for (int c = 0; c < coefficients; c++) {
+			for (int j = 0; j < filters; j++) {
+				this.dct[c * filters + j] = Math.cos(Math.PI * c / filters * (j + 0.5));
+			}
+		}
+		this.energies = ThreadLocal.withInitial(() -> new double[filters]);
+	}
+
+	/**
+	 * Returns the cached plan for a spectrum of binCount bins.
+	 */
+	public static MfccPlan forParameters(double sampleRate, int binCount, int filters, int coefficients,
+			double minFrequency, double maxFrequency) {
+		if (binCount <= 0 || filters <= 0 || coefficients <= 0 || minFrequency >= maxFrequency) {
+			throw new IllegalArgumentException("Invalid MFCC parameters");
+		}
+		String key = sampleRate + "/" + binCount + "/" + filters + "/" + coefficients + "/" + minFrequency + "/"
+				+ maxFrequency;
+		MfccPlan plan = plans.get(key);
+		if (plan == null) {
+			plan = plans.computeIfAbsent(key, k -> new MfccPlan(sampleRate, binCount, filters, coefficients,
+					minFrequency, maxFrequency));
+		}
+		return plan;
+	}
+
+	public int getBinCount() {
+		return this.binCount;
+	}
+
+	public int getCoefficientCount() {
+		return this.coefficients;
+	}
+
+	/**
+	 * Writes the MFCCs of spectrum[offset, offset + binCount) to mfcc[mfccOffset, mfccOffset + coefficients).
+	 */
+	public void compute(double[] spectrum, int offset, double[] mfcc, int mfccOffset) {
+		double[] logEnergies = this.energies.get();
+		for (int j = 0; j < this.filters; j++) {
+			double[] weights = this.filterWeights[j];
+			int start = offset + this.filterStart[j];
+			double energy = 0.0;
+			for (int k = 0; k < weights.length; k++) {
+				energy += weights[k] * spectrum[start + k];
+			}
+			logEnergies[j] = Math.max(Math.log(energy), LOG_FLOOR);
+		}
+		for (int c = 0; c < this.coefficients; c++) {
+			int row = c * this.filters;
+			double sum = 0.0;
+			for (int j = 0; j < this.filters; j++) {
+				sum += this.dct[row + j] * logEnergies[j];
+			}
+			mfcc[mfccOffset + c] = sum;
+		}
+	}
+
+	private static double toMel(double frequency) {
+		return 2595.0 * Math.log10(1.0 + frequency / 700.0);
+	}
+
+	private static double fromMel(double mel) {
+		return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+	}
+}
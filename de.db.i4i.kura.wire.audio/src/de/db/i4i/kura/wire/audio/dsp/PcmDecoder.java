@@ -0,0 +1,125 @@
+package de.db.i4i.kura.wire.audio.dsp;
+
+/**
+ * Decodes interleaved integer PCM straight into mixed-down samples in the range [-1, 1).
+ *
+ * There is one loop per sample width and byte order, so the per-sample work is a
+ * few shifts and adds. Channels are averaged, unsigned samples are re-centred.
+ */
+public final class PcmDecoder {
+
+	private PcmDecoder() {
+	}
+
+	public static int getFrameSize(int sampleSize, int channels) {
+		return ((sampleSize + 7) / 8) * channels;
+	}
+
+	public static int getFrameCount(int length, int sampleSize, int channels) {
+		return length / getFrameSize(sampleSize, channels);
+	}
+
+	/**
+	 * Decodes all whole frames of audioData into samples, which must hold at least that many values.
+	 *
+	 * @return the number of frames decoded
+	 */
+	public static int decodeMixedDown(byte[] audioData, int length, int sampleSize, int channels, boolean signed,
+			boolean bigEndian, double[] samples) {
+		int bytesPerSample = (sampleSize + 7) / 8;
+		int frames = getFrameCount(length, sampleSize, channels);
+		if (samples.length < frames) {
+			throw new IllegalArgumentException("Sample buffer holds " + samples.length + " of " + frames + " frames");
+		}
+		// Samples are MSB aligned in their container, so scale by the container width
+		int bias = signed ? 0 : 1 << (8 * bytesPerSample - 1);
+		double scale = 1.0 / ((double) (1L << (8 * bytesPerSample - 1)) * channels);
+		int i = 0;
+		switch (bytesPerSample) {
+		case 1:
+			for (int f = 0; f < frames; f++) {
+				int sum = 0;
+				for (int c = 0; c < channels; c++) {
+					sum += signed ? audioData[i] : (audioData[i] & 0xff) - bias;
+					i++;
+				}
+				samples[f] = sum * scale;
+			}
+			break;
+		case 2:
+			if (bigEndian) {
+				for (int f = 0; f < frames; f++) {
+					int sum = 0;
+					for (int c = 0; c < channels; c++) {
+						int v = (audioData[i] << 8) | (audioData[i + 1] & 0xff);
+						sum += signed ? v : (v & 0xffff) - bias;
+						i += 2;
+					}
+					samples[f] = sum * scale;
+				}
+			} else {
+				for (int f = 0; f < frames; f++) {
+					int sum = 0;
+					for (int c = 0; c < channels; c++) {
+						int v = (audioData[i + 1] << 8) | (audioData[i] & 0xff);
+						sum += signed ? v : (v & 0xffff) - bias;
+						i += 2;
+					}
+					samples[f] = sum * scale;
+				}
+			}
+			break;
+		case 3:
+			if (bigEndian) {
+				for (int f = 0; f < frames; f++) {
+					long sum = 0;
+					for (int c = 0; c < channels; c++) {
+						int v = (audioData[i] << 16) | ((audioData[i + 1] & 0xff) << 8) | (audioData[i + 2] & 0xff);
+						sum += signed ? v : (v & 0xffffff) - bias;
+						i += 3;
+					}
+					samples[f] = sum * scale;
+				}
+			} else {
+				for (int f = 0; f < frames; f++) {
+					long sum = 0;
+					for (int c = 0; c < channels; c++) {
+						int v = (audioData[i + 2] << 16) | ((audioData[i + 1] & 0xff) << 8) | (audioData[i] & 0xff);
+						sum += signed ? v : (v & 0xffffff) - bias;
+						i += 3;
+					}
+					samples[f] = sum * scale;
+				}
+			}
+			break;
+		case 4:
+			if (bigEndian) {
+				for (int f = 0; f < frames; f++) {
+					long sum = 0;
+					for (int c = 0; c < channels; c++) {
+						int v = (audioData[i] << 24) | ((audioData[i + 1] & 0xff) << 16)
+								| ((audioData[i + 2] & 0xff) << 8) | (audioData[i + 3] & 0xff);
+						sum += signed ? v : (v & 0xffffffffL) - (1L << 31);
+						i += 4;
+					}
+					samples[f] = sum * scale;
+				}
+			} else {
+				for (int f = 0; f < frames; f++) {
+					long sum = 0;
+					for (int c = 0; c < channels; c++) {
+						int v = (audioData[i + 3] << 24) | ((audioData[i + 2] & 0xff) << 16)
+								| ((audioData[i + 1] & 0xff) << 8) | (audioData[i] & 0xff);
+						sum += signed ? v : (v & 0xffffffffL) - (1L << 31);
+						i += 4;
+					}
+					samples[f] = sum * scale;
+				}
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Sample size " + sampleSize + " not supported");
+		}
+		return frames;
+	}
+}
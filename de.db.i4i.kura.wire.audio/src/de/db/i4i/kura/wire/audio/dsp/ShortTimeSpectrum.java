@@ -0,0 +1,104 @@
+package de.db.i4i.kura.wire.audio.dsp;
+
+import java.util.Arrays;
+
+import jAudioFeatureExtractor.jAudioTools.FFT;
+
+/**
+ * Computes the magnitude spectra of overlapping, windowed frames of a signal.
+ *
+ * Frames are zero-padded to the next power of two, so the spectrum of every frame
+ * has fftSize / 2 bins. Magnitudes are scaled like jAudio's MagnitudeSpectrum. A
+ * signal shorter than one frame yields a single zero-padded frame. The frames are
+ * transformed with the built-in {@link FftPlan} or with jAudio's FFT. Instances may be
+ * shared between threads.
+ */
+public class ShortTimeSpectrum {
+
+	private final int frameSize;
+	private final int hopSize;
+	private final int fftSize;
+	private final double[] window;
+	private final FftPlan fftPlan;
+	private final ThreadLocalDoubleArray frame = new ThreadLocalDoubleArray();
+
+	public ShortTimeSpectrum(int frameSize, int hopSize, WindowFunction windowFunction, boolean builtinFft) {
+		if (frameSize <= 0 || hopSize <= 0) {
+			throw new IllegalArgumentException("Frame size and hop size must be positive");
+		}
+		this.frameSize = frameSize;
+		this.hopSize = hopSize;
+		this.fftSize = FftPlan.getFftSize(frameSize);
+		this.window = windowFunction.getCoefficients(frameSize);
+		this.fftPlan = builtinFft ? FftPlan.forSize(this.fftSize) : null;
+	}
+
+	public int getFrameSize() {
+		return this.frameSize;
+	}
+
+	public int getHopSize() {
+		return this.hopSize;
+	}
+
+	public int getBinCount() {
+		return this.fftSize / 2;
+	}
+
+	public int getFrameCount(int length) {
+		if (length <= 0) {
+			return 0;
+		}
+		if (length <= this.frameSize) {
+			return 1;
+		}
+		return 1 + (length - this.frameSize) / this.hopSize;
+	}
+
+	/**
+	 * Writes the spectra of all frames of samples[0, length) row by row into spectrogram,
+	 * which must hold getFrameCount(length) * getBinCount() values.
+	 *
+	 * @return the number of frames
+	 */
+	public int compute(double[] samples, int length, double[] spectrogram) throws Exception {
+		int frames = getFrameCount(length);
+		int bins = getBinCount();
+		double[] frame = this.fftPlan == null ? this.frame.get(this.fftSize) : null;
+		for (int f = 0; f < frames; f++) {
+			int start = f * this.hopSize;
+			int n = Math.min(this.frameSize, length - start);
+			if (this.fftPlan != null) {
+				this.fftPlan.magnitudeSpectrum(samples, start, n, this.window, spectrogram, f * bins);
+				continue;
+			}
+			for (int i = 0; i < n; i++) {
+				frame[i] = samples[start + i] * this.window[i];
+			}
+			Arrays.fill(frame, n, this.fftSize, 0.0);
+			// The frame is already windowed, jAudio's Hann window over the padded length is not wanted
+			double[] magnitudes = new FFT(frame, null, false, false).getMagnitudeSpectrum();
+			System.arraycopy(magnitudes, 0, spectrogram, f * bins, bins);
+		}
+		return frames;
+	}
+
+	/**
+	 * Averages the rows of a spectrogram into a single spectrum.
+	 */
+	public static double[] average(double[] spectrogram, int frames, int bins) {
+		double[] spectrum = new double[bins];
+		for (int f = 0; f < frames; f++) {
+			int row = f * bins;
+			for (int b = 0; b < bins; b++) {
+				spectrum[b] += spectrogram[row + b];
+			}
+		}
+		if (frames > 0) {
+			for (int b = 0; b < bins; b++) {
+				spectrum[b] /= frames;
+			}
+		}
+		return spectrum;
+	}
+}
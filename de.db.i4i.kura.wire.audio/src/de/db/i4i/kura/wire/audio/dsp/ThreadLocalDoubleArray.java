@@ -0,0 +1,21 @@
+package de.db.i4i.kura.wire.audio.dsp;
+
+/**
+ * A reusable double[] per thread, for buffers that must have an exact length.
+ */
+public final class ThreadLocalDoubleArray {
+
+	private final ThreadLocal<double[]> arrays = ThreadLocal.withInitial(() -> new double[0]);
+
+	/**
+	 * Returns this thread's array, reallocated if it does not have exactly the given length.
+	 */
+	public double[] get(int length) {
+		double[] array = this.arrays.get();
+		if (array.length != length) {
+			array = new double[length];
+			this.arrays.set(array);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,42 @@
+package de.db.i4i.kura.wire.audio.dsp;
+
+/**
+ * Analysis windows applied to a frame before its FFT.
+ */
+public enum WindowFunction {
+
+	RECTANGULAR, HANN, HAMMING;
+
+	/**
+	 * Returns the periodic window of the given size.
+	 */
+	public double[] getCoefficients(int size) {
+		double[] coefficients = new double[size];
+		for (int i = 0; i < size; i++) {
+			double phase = 2.0 * Math.PI * i / size;
+			switch (this) {
+			case HANN:
+				coefficients[i] = 0.5 - 0.5 * Math.cos(phase);
+				break;
+			case HAMMING:
+				coefficients[i] = 0.54 - 0.46 * Math.cos(phase);
+				break;
+			default:
+				coefficients[i] = 1.0;
+			}
+		}
+		return coefficients;
+	}
+
+	/**
+	 * Returns the window with the given case-insensitive name, or Hann if there is none.
+	 */
+	public static WindowFunction fromName(String name) {
+		for (WindowFunction windowFunction : values()) {
+			if (windowFunction.name().equalsIgnoreCase(name)) {
+				return windowFunction;
+			}
+		}
+		return HANN;
+	}
+}
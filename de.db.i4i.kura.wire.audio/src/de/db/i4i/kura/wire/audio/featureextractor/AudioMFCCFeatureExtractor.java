@@ -1,10 +1,11 @@
 package de.db.i4i.kura.wire.audio.featureextractor;
 
-import static de.db.i4i.kura.wire.audio.AudioWireUtils.byteArrayToDoubleArray;
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.decodeDoubleArray;
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.getDecodedLength;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,7 +13,6 @@ import java.util.Map;
 import org.eclipse.kura.configuration.ConfigurableComponent;
 import org.eclipse.kura.type.DataType;
 import org.eclipse.kura.type.TypedValue;
-import org.eclipse.kura.type.TypedValues;
 import org.eclipse.kura.wire.WireEmitter;
 import org.eclipse.kura.wire.WireEnvelope;
 import org.eclipse.kura.wire.WireHelperService;
@@ -24,7 +24,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.db.i4i.kura.wire.audio.AudioWireRecordProperties;
-import jAudioFeatureExtractor.AudioFeatures.MFCC;
+import de.db.i4i.kura.wire.audio.ParallelRecordMapper;
+import de.db.i4i.kura.wire.audio.dsp.ThreadLocalDoubleArray;
 
 public class AudioMFCCFeatureExtractor implements WireEmitter, ConfigurableComponent, WireReceiver {
 
@@ -34,6 +35,8 @@ private static final Logger logger = LoggerFactory.getLogger(AudioMFCCFeatureExt
 	private WireSupport wireSupport;
 	
 	private AudioMFCCFeatureExtractorOptions options;
+	private volatile ParallelRecordMapper recordMapper;
+	private final ThreadLocalDoubleArray spectrum = new ThreadLocalDoubleArray();
 
 	public void bindWireHelperService(final WireHelperService wireHelperService) {
         if (isNull(this.wireHelperService)) {
@@ -56,6 +59,10 @@ private static final Logger logger = LoggerFactory.getLogger(AudioMFCCFeatureExt
 	
 	protected synchronized void deactivate() {
 		logger.debug("Deactivating AudioMFCCFeatureExtractor...");
+		if (nonNull(this.recordMapper)) {
+			this.recordMapper.shutdown();
+			this.recordMapper = null;
+		}
         logger.debug("Deactivating AudioMFCCFeatureExtractor... Done");
 	}
 	
@@ -92,35 +99,8 @@ private static final Logger logger = LoggerFactory.getLogger(AudioMFCCFeatureExt
 		logger.debug("Received wire envelope with {} record(s) from {}", wireEnvelope.getRecords().size(),
 				wireEnvelope.getEmitterPid());
 		
-		final List<WireRecord> audioMFCCFeatureExtractorWireRecords = new ArrayList<>();
-		for (WireRecord record : wireEnvelope.getRecords()) {
-			
-			logger.debug("Extracting properties from record...");
-			final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
-			Float sampleRate = (Float) this.getPropertyValue(record, DataType.FLOAT, AudioWireRecordProperties.SAMPLE_RATE);
-			logger.debug("Extracting properties from record...Done");
-			try {
-				double[] msFeature = byteArrayToDoubleArray(
-						(byte[]) this.getPropertyValue(
-								record,
-								DataType.BYTE_ARRAY,
-								AudioWireRecordProperties.MAGNITUDE_SPECTRUM));
-				MFCC mfcc = new MFCC();
-				double[][] otherFeatureValues = new double[1][msFeature.length];
-				otherFeatureValues[0] = msFeature;
-				double[] mfccFeature = mfcc.extractFeature(null, sampleRate.doubleValue(), otherFeatureValues);
-				for (Integer i = 0; i < mfccFeature.length; i++) {
-					properties.put("feature_mfcc_coeff_" + i.toString(), TypedValues.newDoubleValue(mfccFeature[i]));
-				}
-			} catch (Exception e) {
-				logger.error("Could not extract feature:", e);
-			}
-			
-			properties.remove(AudioWireRecordProperties.MAGNITUDE_SPECTRUM);
-			
-			final WireRecord audioMFCCFeatureExtractorWireRecord = new WireRecord(properties);
-			audioMFCCFeatureExtractorWireRecords.add(audioMFCCFeatureExtractorWireRecord);
-		}
+		final List<WireRecord> audioMFCCFeatureExtractorWireRecords = this.recordMapper.map(wireEnvelope.getRecords(),
+				this::processRecord);
 		Integer numberOfRecords = audioMFCCFeatureExtractorWireRecords.size();
 		logger.debug("Envelope took {}ms to process", System.currentTimeMillis() - envelopeTimer);
 		logger.debug("Emitting {} record(s)...", numberOfRecords);
@@ -130,15 +110,56 @@ private static final Logger logger = LoggerFactory.getLogger(AudioMFCCFeatureExt
 		logger.debug("Emitting...done");
 	}
 
+	private void processRecord(WireRecord record, List<WireRecord> output) {
+		
+		logger.debug("Extracting properties from record...");
+		final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
+		Float sampleRate = (Float) this.getPropertyValue(record, DataType.FLOAT, AudioWireRecordProperties.SAMPLE_RATE);
+		logger.debug("Extracting properties from record...Done");
+		try {
+			double[] msFeature = decodeSpectrum(
+					(byte[]) this.getPropertyValue(
+							record,
+							DataType.BYTE_ARRAY,
+							AudioWireRecordProperties.MAGNITUDE_SPECTRUM),
+					(String) this.getPropertyValue(
+							record,
+							DataType.STRING,
+							AudioWireRecordProperties.SPECTRUM_ENCODING));
+			double[] mfccFeature = SpectralFeatures.mfcc(msFeature, sampleRate, this.options.getMfccImplementation(),
+					this.options.getMfccFilters(), this.options.getMfccCoefficients(),
+					this.options.getMfccMinFrequency(), this.options.getMfccMaxFrequency());
+			MfccFeatureOutput.put(properties, mfccFeature, this.options.getMfccOutput());
+		} catch (Exception e) {
+			logger.error("Could not extract feature:", e);
+		}
+		
+		properties.remove(AudioWireRecordProperties.MAGNITUDE_SPECTRUM);
+		properties.remove(AudioWireRecordProperties.SPECTRUM_ENCODING);
+		
+		final WireRecord audioMFCCFeatureExtractorWireRecord = new WireRecord(properties);
+		output.add(audioMFCCFeatureExtractorWireRecord);
+	}
+	
 	private void extractProperties(final Map<String, Object> properties) {
         requireNonNull(properties, "Properties cannot be null");
         this.options = new AudioMFCCFeatureExtractorOptions(properties);
+        this.recordMapper = ParallelRecordMapper.reconfigure(this.recordMapper, "AudioMFCCFeatureExtractor",
+        		this.options.getParallelism());
     }
 	
+	// Records without an encoding come from older producers and hold big-endian doubles
+	private double[] decodeSpectrum(byte[] spectrum, String spectrumEncoding) {
+		int length = getDecodedLength(spectrum, spectrumEncoding);
+		double[] values = this.spectrum.get(length);
+		decodeDoubleArray(spectrum, spectrumEncoding, values);
+		return values;
+	}
+	
 	private Object getPropertyValue(WireRecord record, DataType expectedType, String propertyName) {
 		logger.debug("Getting property value for {}...", propertyName);
 		TypedValue<?> property = record.getProperties().get(propertyName);
-		if (property.getType() == expectedType) {
+		if (nonNull(property) && property.getType() == expectedType) {
 			logger.debug("Got value for {}", propertyName);
 			return property.getValue();
 		} else {
@@ -1,15 +1,87 @@
 package de.db.i4i.kura.wire.audio.featureextractor;
 
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Map;
 
 public class AudioMFCCFeatureExtractorOptions {
 	
+	private static final String MFCC_IMPLEMENTATION = "mfcc.implementation";
+	private static final String MFCC_FILTERS = "mfcc.filters";
+	private static final String MFCC_COEFFICIENTS = "mfcc.coefficients";
+	private static final String MFCC_MIN_FREQUENCY = "mfcc.min.frequency";
+	private static final String MFCC_MAX_FREQUENCY = "mfcc.max.frequency";
+	private static final String MFCC_OUTPUT = "mfcc.output";
+	private static final String PARALLELISM = "parallelism";
+	
 	private final Map<String, Object> properties;
 	
 	AudioMFCCFeatureExtractorOptions(final Map<String, Object> properties) {
 		requireNonNull(properties, "Properties must not be null");
 		this.properties = properties;
 	}
+	
+	String getMfccImplementation() {
+		String mfccImplementation = null;
+		final Object mi = this.properties.get(MFCC_IMPLEMENTATION);
+		if (nonNull(mi) && (mi instanceof String)) {
+			mfccImplementation = (String) mi;
+		}
+		return mfccImplementation;
+	}
+	
+	Integer getMfccFilters() {
+		Integer mfccFilters = null;
+		final Object mf = this.properties.get(MFCC_FILTERS);
+		if (nonNull(mf) && (mf instanceof Integer)) {
+			mfccFilters = (Integer) mf;
+		}
+		return mfccFilters;
+	}
+	
+	Integer getMfccCoefficients() {
+		Integer mfccCoefficients = null;
+		final Object mc = this.properties.get(MFCC_COEFFICIENTS);
+		if (nonNull(mc) && (mc instanceof Integer)) {
+			mfccCoefficients = (Integer) mc;
+		}
+		return mfccCoefficients;
+	}
+	
+	Float getMfccMinFrequency() {
+		Float mfccMinFrequency = null;
+		final Object mmf = this.properties.get(MFCC_MIN_FREQUENCY);
+		if (nonNull(mmf) && (mmf instanceof Float)) {
+			mfccMinFrequency = (Float) mmf;
+		}
+		return mfccMinFrequency;
+	}
+	
+	Float getMfccMaxFrequency() {
+		Float mfccMaxFrequency = null;
+		final Object mmf = this.properties.get(MFCC_MAX_FREQUENCY);
+		if (nonNull(mmf) && (mmf instanceof Float)) {
+			mfccMaxFrequency = (Float) mmf;
+		}
+		return mfccMaxFrequency;
+	}
+	
+	String getMfccOutput() {
+		String mfccOutput = null;
+		final Object mo = this.properties.get(MFCC_OUTPUT);
+		if (nonNull(mo) && (mo instanceof String)) {
+			mfccOutput = (String) mo;
+		}
+		return mfccOutput;
+	}
+	
+	Integer getParallelism() {
+		Integer parallelism = null;
+		final Object p = this.properties.get(PARALLELISM);
+		if (nonNull(p) && (p instanceof Integer)) {
+			parallelism = (Integer) p;
+		}
+		return parallelism;
+	}
 }
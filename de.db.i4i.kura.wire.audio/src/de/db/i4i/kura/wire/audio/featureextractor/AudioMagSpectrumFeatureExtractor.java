@@ -1,11 +1,13 @@
 package de.db.i4i.kura.wire.audio.featureextractor;
 
-import static de.db.i4i.kura.wire.audio.AudioWireUtils.doubleArrayToByteArray;
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.ENCODING_FLOAT32_LE;
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.ENCODING_FLOAT64_BE;
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.encodeDoubleArray;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
 import java.io.ByteArrayInputStream;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +31,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.db.i4i.kura.wire.audio.AudioWireRecordProperties;
+import de.db.i4i.kura.wire.audio.ParallelRecordMapper;
+import de.db.i4i.kura.wire.audio.dsp.ShortTimeSpectrum;
+import de.db.i4i.kura.wire.audio.dsp.ThreadLocalDoubleArray;
 import jAudioFeatureExtractor.AudioFeatures.MagnitudeSpectrum;
 import jAudioFeatureExtractor.jAudioTools.AudioSamples;
 
@@ -39,7 +44,17 @@ private static final Logger logger = LoggerFactory.getLogger(AudioMagSpectrumFea
     private volatile WireHelperService wireHelperService;
 	private WireSupport wireSupport;
 	
+	private static final String SAMPLE_DECODER_JAUDIO = "jaudio";
+	private static final String FFT_ENGINE_JAUDIO = "jaudio";
+	private static final String STFT_OUTPUT_SPECTROGRAM = "spectrogram";
+	private static final String STFT_OUTPUT_FRAMES = "frames";
+	
 	private AudioMagSpectrumFeatureExtractorOptions options;
+	private volatile ParallelRecordMapper recordMapper;
+	private final ThreadLocalDoubleArray samples = new ThreadLocalDoubleArray();
+	private final ThreadLocalDoubleArray spectrum = new ThreadLocalDoubleArray();
+	private final ThreadLocalDoubleArray spectrogram = new ThreadLocalDoubleArray();
+	private volatile ShortTimeSpectrum shortTimeSpectrum;
 
 	public void bindWireHelperService(final WireHelperService wireHelperService) {
         if (isNull(this.wireHelperService)) {
@@ -62,6 +77,10 @@ private static final Logger logger = LoggerFactory.getLogger(AudioMagSpectrumFea
 	
 	protected synchronized void deactivate() {
 		logger.debug("Deactivating AudioMagSpectrumFeatureExtractor...");
+		if (nonNull(this.recordMapper)) {
+			this.recordMapper.shutdown();
+			this.recordMapper = null;
+		}
         logger.debug("Deactivating AudioMagSpectrumFeatureExtractor... Done");
 	}
 	
@@ -98,44 +117,8 @@ private static final Logger logger = LoggerFactory.getLogger(AudioMagSpectrumFea
 				wireEnvelope.getEmitterPid());
 		long envelopeTimer = System.currentTimeMillis();
 		
-		final List<WireRecord> audioMagSpectrumFeatureExtractorWireRecords = new ArrayList<>();
-		for (WireRecord record : wireEnvelope.getRecords()) {
-			
-			logger.debug("Extracting properties from record...");
-			final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
-			String source = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.SOURCE);
-			Float sampleRate = (Float) this.getPropertyValue(record, DataType.FLOAT, AudioWireRecordProperties.SAMPLE_RATE);
-			Integer sampleSize = (Integer) this.getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.SAMPLE_SIZE);
-			Integer channels = (Integer) this.getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.CHANNELS);
-			Boolean signed = (Boolean) this.getPropertyValue(record, DataType.BOOLEAN, AudioWireRecordProperties.SIGNED);
-			Boolean bigEndian = (Boolean) this.getPropertyValue(record, DataType.BOOLEAN, AudioWireRecordProperties.BIG_ENDIAN);
-			byte[] audioData = (byte[]) this.getPropertyValue(record, DataType.BYTE_ARRAY, AudioWireRecordProperties.AUDIO_DATA);
-			logger.debug("Extracting properties from record...Done");
-			long convertTimer = System.currentTimeMillis();
-			AudioFormat audioFormat = new AudioFormat(sampleRate, sampleSize, channels, signed, bigEndian);
-			logger.debug("Converting audio data from byte[] to double[]...");
-			logger.debug("AudioFormat: {}", audioFormat.toString());
-			ByteArrayInputStream bais = new ByteArrayInputStream(audioData);
-			AudioInputStream ais = new AudioInputStream(bais, audioFormat, audioData.length);
-			try {
-				AudioSamples as = new AudioSamples(	ais, source + "_" + UUID.randomUUID().toString(), false);
-				double[] samplesMixedDown = as.getSamplesMixedDown();
-				logger.debug("Converting audio data took {}ms", System.currentTimeMillis() - convertTimer);
-				long featureTimer = System.currentTimeMillis();
-				MagnitudeSpectrum ms = new MagnitudeSpectrum();
-				double[] msFeature = ms.extractFeature(samplesMixedDown, sampleRate.doubleValue(), null);
-				logger.debug("Extracting magnitude spectrum took {}ms", System.currentTimeMillis() - featureTimer);
-				long doubleToByteTimer = System.currentTimeMillis();
-				properties.put(AudioWireRecordProperties.MAGNITUDE_SPECTRUM,
-						TypedValues.newByteArrayValue(doubleArrayToByteArray(msFeature)));
-				logger.debug("Converting magnitude spectrum to byte[] took {}ms", System.currentTimeMillis() - doubleToByteTimer);
-			} catch (Exception e) {
-				logger.error("Could not extract feature:", e);
-			}
-			properties.remove(AudioWireRecordProperties.AUDIO_DATA);
-			final WireRecord audioMagSpectrumFeatureExtractorWireRecord = new WireRecord(properties);
-			audioMagSpectrumFeatureExtractorWireRecords.add(audioMagSpectrumFeatureExtractorWireRecord);
-		}
+		final List<WireRecord> audioMagSpectrumFeatureExtractorWireRecords = this.recordMapper.map(wireEnvelope.getRecords(),
+				this::processRecord);
 		Integer numberOfRecords = audioMagSpectrumFeatureExtractorWireRecords.size();
 		logger.debug("Envelope took {}ms to process", System.currentTimeMillis() - envelopeTimer);
 		logger.debug("Emitting {} record(s)...", numberOfRecords);
@@ -146,11 +129,119 @@ private static final Logger logger = LoggerFactory.getLogger(AudioMagSpectrumFea
 		
 	}
 
+	private void processRecord(WireRecord record, List<WireRecord> output) {
+		
+		logger.debug("Extracting properties from record...");
+		final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
+		String source = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.SOURCE);
+		Float sampleRate = (Float) this.getPropertyValue(record, DataType.FLOAT, AudioWireRecordProperties.SAMPLE_RATE);
+		Integer sampleSize = (Integer) this.getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.SAMPLE_SIZE);
+		Integer channels = (Integer) this.getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.CHANNELS);
+		Boolean signed = (Boolean) this.getPropertyValue(record, DataType.BOOLEAN, AudioWireRecordProperties.SIGNED);
+		Boolean bigEndian = (Boolean) this.getPropertyValue(record, DataType.BOOLEAN, AudioWireRecordProperties.BIG_ENDIAN);
+		byte[] audioData = (byte[]) this.getPropertyValue(record, DataType.BYTE_ARRAY, AudioWireRecordProperties.AUDIO_DATA);
+		logger.debug("Extracting properties from record...Done");
+		long convertTimer = System.currentTimeMillis();
+		logger.debug("Converting audio data from byte[] to double[]...");
+		try {
+			double[] samplesMixedDown;
+			if (SAMPLE_DECODER_JAUDIO.equals(this.options.getSampleDecoder())) {
+				AudioFormat audioFormat = new AudioFormat(sampleRate, sampleSize, channels, signed, bigEndian);
+				logger.debug("AudioFormat: {}", audioFormat.toString());
+				ByteArrayInputStream bais = new ByteArrayInputStream(audioData);
+				AudioInputStream ais = new AudioInputStream(bais, audioFormat, audioData.length);
+				AudioSamples as = new AudioSamples(	ais, source + "_" + UUID.randomUUID().toString(), false);
+				samplesMixedDown = as.getSamplesMixedDown();
+			} else {
+				samplesMixedDown = SpectralFeatures.decodeMixedDown(audioData, sampleSize, channels, signed, bigEndian,
+						this.samples);
+			}
+			logger.debug("Converting audio data took {}ms", System.currentTimeMillis() - convertTimer);
+			long featureTimer = System.currentTimeMillis();
+			String spectrumEncoding = getSpectrumEncoding();
+			properties.put(AudioWireRecordProperties.SPECTRUM_ENCODING, TypedValues.newStringValue(spectrumEncoding));
+			ShortTimeSpectrum stft = this.shortTimeSpectrum;
+			if (stft == null) {
+				double[] msFeature;
+				if (FFT_ENGINE_JAUDIO.equals(this.options.getFftEngine())) {
+					MagnitudeSpectrum ms = new MagnitudeSpectrum();
+					msFeature = ms.extractFeature(samplesMixedDown, sampleRate.doubleValue(), null);
+				} else {
+					msFeature = SpectralFeatures.magnitudeSpectrum(samplesMixedDown, this.spectrum);
+				}
+				logger.debug("Extracting magnitude spectrum took {}ms", System.currentTimeMillis() - featureTimer);
+				long doubleToByteTimer = System.currentTimeMillis();
+				properties.put(AudioWireRecordProperties.MAGNITUDE_SPECTRUM, TypedValues.newByteArrayValue(
+						encodeDoubleArray(msFeature, 0, msFeature.length, spectrumEncoding)));
+				logger.debug("Converting magnitude spectrum to byte[] took {}ms", System.currentTimeMillis() - doubleToByteTimer);
+			} else {
+				int bins = stft.getBinCount();
+				int spectrogramLength = stft.getFrameCount(samplesMixedDown.length) * bins;
+				double[] spectrogram = this.spectrogram.get(spectrogramLength);
+				int frames = stft.compute(samplesMixedDown, samplesMixedDown.length, spectrogram);
+				logger.debug("Extracting {} frame spectra took {}ms", frames, System.currentTimeMillis() - featureTimer);
+				if (STFT_OUTPUT_FRAMES.equals(this.options.getStftOutput())) {
+					properties.remove(AudioWireRecordProperties.AUDIO_DATA);
+					addFrameRecords(output, properties, spectrogram, frames, bins,
+							stft.getHopSize(), sampleRate, spectrumEncoding);
+					return;
+				} else if (STFT_OUTPUT_SPECTROGRAM.equals(this.options.getStftOutput())) {
+					properties.put(AudioWireRecordProperties.SPECTROGRAM, TypedValues.newByteArrayValue(
+							encodeDoubleArray(spectrogram, 0, frames * bins, spectrumEncoding)));
+					properties.put(AudioWireRecordProperties.SPECTROGRAM_FRAMES, TypedValues.newIntegerValue(frames));
+					properties.put(AudioWireRecordProperties.SPECTROGRAM_BINS, TypedValues.newIntegerValue(bins));
+				} else {
+					properties.put(AudioWireRecordProperties.MAGNITUDE_SPECTRUM, TypedValues.newByteArrayValue(
+							encodeDoubleArray(ShortTimeSpectrum.average(spectrogram, frames, bins), 0, bins,
+									spectrumEncoding)));
+				}
+			}
+		} catch (Exception e) {
+			logger.error("Could not extract feature:", e);
+		}
+		properties.remove(AudioWireRecordProperties.AUDIO_DATA);
+		final WireRecord audioMagSpectrumFeatureExtractorWireRecord = new WireRecord(properties);
+		output.add(audioMagSpectrumFeatureExtractorWireRecord);
+	}
+	
 	private void extractProperties(final Map<String, Object> properties) {
         requireNonNull(properties, "Properties cannot be null");
         this.options = new AudioMagSpectrumFeatureExtractorOptions(properties);
+        this.recordMapper = ParallelRecordMapper.reconfigure(this.recordMapper, "AudioMagSpectrumFeatureExtractor",
+        		this.options.getParallelism());
+        this.shortTimeSpectrum = SpectralFeatures.newShortTimeSpectrum(this.options.getSpectrumMode(),
+        		this.options.getStftFrameSize(), this.options.getStftHopSize(), this.options.getStftWindow(),
+        		!FFT_ENGINE_JAUDIO.equals(this.options.getFftEngine()));
     }
 	
+	private String getSpectrumEncoding() {
+		String spectrumEncoding = this.options.getSpectrumEncoding();
+		return ENCODING_FLOAT32_LE.equals(spectrumEncoding) ? ENCODING_FLOAT32_LE : ENCODING_FLOAT64_BE;
+	}
+	
+	// One record per frame, timestamp and frame offset are those of the frame's first sample
+	private void addFrameRecords(List<WireRecord> wireRecords, Map<String, TypedValue<?>> properties,
+			double[] spectrogram, int frames, int bins, int hopSize, Float sampleRate, String spectrumEncoding) {
+		TypedValue<?> timestamp = properties.get(AudioWireRecordProperties.TIMESTAMP);
+		TypedValue<?> frameOffset = properties.get(AudioWireRecordProperties.FRAME_OFFSET);
+		for (int f = 0; f < frames; f++) {
+			final Map<String, TypedValue<?>> frameProperties = new HashMap<String, TypedValue<?>>(properties);
+			long sampleOffset = (long) f * hopSize;
+			if (nonNull(timestamp) && timestamp.getType() == DataType.LONG) {
+				long frameTimestamp = (Long) timestamp.getValue() + (long) (sampleOffset * 1000.0 / sampleRate);
+				frameProperties.put(AudioWireRecordProperties.TIMESTAMP, TypedValues.newLongValue(frameTimestamp));
+			}
+			if (nonNull(frameOffset) && frameOffset.getType() == DataType.LONG) {
+				frameProperties.put(AudioWireRecordProperties.FRAME_OFFSET,
+						TypedValues.newLongValue((Long) frameOffset.getValue() + sampleOffset));
+			}
+			frameProperties.put(AudioWireRecordProperties.SPECTRUM_FRAME_INDEX, TypedValues.newIntegerValue(f));
+			frameProperties.put(AudioWireRecordProperties.MAGNITUDE_SPECTRUM, TypedValues.newByteArrayValue(
+					encodeDoubleArray(spectrogram, f * bins, bins, spectrumEncoding)));
+			wireRecords.add(new WireRecord(frameProperties));
+		}
+	}
+	
 	private Object getPropertyValue(WireRecord record, DataType expectedType, String propertyName) {
 		logger.debug("Getting property value for {}...", propertyName);
 		TypedValue<?> property = record.getProperties().get(propertyName);
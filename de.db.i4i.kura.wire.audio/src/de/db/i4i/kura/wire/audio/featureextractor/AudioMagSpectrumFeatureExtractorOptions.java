@@ -1,15 +1,107 @@
 package de.db.i4i.kura.wire.audio.featureextractor;
 
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Map;
 
 public class AudioMagSpectrumFeatureExtractorOptions {
 	
+	private static final String SAMPLE_DECODER = "sample.decoder";
+	private static final String FFT_ENGINE = "fft.engine";
+	private static final String SPECTRUM_MODE = "spectrum.mode";
+	private static final String STFT_FRAME_SIZE = "stft.frame.size";
+	private static final String STFT_HOP_SIZE = "stft.hop.size";
+	private static final String STFT_WINDOW = "stft.window";
+	private static final String STFT_OUTPUT = "stft.output";
+	private static final String SPECTRUM_ENCODING = "spectrum.encoding";
+	private static final String PARALLELISM = "parallelism";
+	
 	private final Map<String, Object> properties;
 	
 	AudioMagSpectrumFeatureExtractorOptions(final Map<String, Object> properties) {
 		requireNonNull(properties, "Properties must not be null");
 		this.properties = properties;
 	}
+	
+	String getSampleDecoder() {
+		String sampleDecoder = null;
+		final Object sd = this.properties.get(SAMPLE_DECODER);
+		if (nonNull(sd) && (sd instanceof String)) {
+			sampleDecoder = (String) sd;
+		}
+		return sampleDecoder;
+	}
+	
+	String getFftEngine() {
+		String fftEngine = null;
+		final Object fe = this.properties.get(FFT_ENGINE);
+		if (nonNull(fe) && (fe instanceof String)) {
+			fftEngine = (String) fe;
+		}
+		return fftEngine;
+	}
+	
+	String getSpectrumMode() {
+		String spectrumMode = null;
+		final Object sm = this.properties.get(SPECTRUM_MODE);
+		if (nonNull(sm) && (sm instanceof String)) {
+			spectrumMode = (String) sm;
+		}
+		return spectrumMode;
+	}
+	
+	Integer getStftFrameSize() {
+		Integer stftFrameSize = null;
+		final Object sfs = this.properties.get(STFT_FRAME_SIZE);
+		if (nonNull(sfs) && (sfs instanceof Integer)) {
+			stftFrameSize = (Integer) sfs;
+		}
+		return stftFrameSize;
+	}
+	
+	Integer getStftHopSize() {
+		Integer stftHopSize = null;
+		final Object shs = this.properties.get(STFT_HOP_SIZE);
+		if (nonNull(shs) && (shs instanceof Integer)) {
+			stftHopSize = (Integer) shs;
+		}
+		return stftHopSize;
+	}
+	
+	String getStftWindow() {
+		String stftWindow = null;
+		final Object sw = this.properties.get(STFT_WINDOW);
+		if (nonNull(sw) && (sw instanceof String)) {
+			stftWindow = (String) sw;
+		}
+		return stftWindow;
+	}
+	
+	String getStftOutput() {
+		String stftOutput = null;
+		final Object so = this.properties.get(STFT_OUTPUT);
+		if (nonNull(so) && (so instanceof String)) {
+			stftOutput = (String) so;
+		}
+		return stftOutput;
+	}
+	
+	String getSpectrumEncoding() {
+		String spectrumEncoding = null;
+		final Object se = this.properties.get(SPECTRUM_ENCODING);
+		if (nonNull(se) && (se instanceof String)) {
+			spectrumEncoding = (String) se;
+		}
+		return spectrumEncoding;
+	}
+	
+	Integer getParallelism() {
+		Integer parallelism = null;
+		final Object p = this.properties.get(PARALLELISM);
+		if (nonNull(p) && (p instanceof Integer)) {
+			parallelism = (Integer) p;
+		}
+		return parallelism;
+	}
 }
@@ -1,21 +1,26 @@
 package de.db.i4i.kura.wire.audio.featureextractor;
 
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.kura.KuraErrorCode;
 import org.eclipse.kura.KuraException;
 import org.eclipse.kura.configuration.ConfigurableComponent;
-import org.eclipse.kura.core.util.ProcessUtil;
-import org.eclipse.kura.core.util.SafeProcess;
 import org.eclipse.kura.type.DataType;
 import org.eclipse.kura.type.TypedValue;
 import org.eclipse.kura.type.TypedValues;
@@ -30,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.db.i4i.kura.wire.audio.AudioWireRecordProperties;
+import de.db.i4i.kura.wire.audio.ParallelRecordMapper;
 
 public class AudioScriptFeatureExtractor implements ConfigurableComponent, WireEmitter, WireReceiver {
 	
@@ -38,7 +44,18 @@ public class AudioScriptFeatureExtractor implements ConfigurableComponent, WireE
     private volatile WireHelperService wireHelperService;
 	private WireSupport wireSupport;
 	
+	private static final String SCRIPT_MODE_WORKER = "worker";
+	private static final String AUDIO_HANDOFF_STDIN = "stdin";
+	private static final String AUDIO_HANDOFF_SHM = "shm";
+	private static final String SHARED_MEMORY_DIRECTORY = "/dev/shm";
+	
 	private AudioScriptFeatureExtractorOptions options;
+	private volatile String scriptPathName;
+	private volatile long timeout;
+	private volatile String audioHandoff;
+	private volatile Semaphore executionPermits;
+	private volatile BlockingQueue<ScriptWorker> workers;
+	private volatile ParallelRecordMapper recordMapper;
 
 	public void bindWireHelperService(final WireHelperService wireHelperService) {
         if (isNull(this.wireHelperService)) {
@@ -61,6 +78,11 @@ public class AudioScriptFeatureExtractor implements ConfigurableComponent, WireE
 	
 	protected synchronized void deactivate() {
 		logger.debug("Deactivating AudioFeatureExtractor...");
+		destroyWorkers();
+		if (nonNull(this.recordMapper)) {
+			this.recordMapper.shutdown();
+			this.recordMapper = null;
+		}
         logger.debug("Deactivating AudioFeatureExtractor... Done");
 	}
 	
@@ -97,92 +119,249 @@ public class AudioScriptFeatureExtractor implements ConfigurableComponent, WireE
 				wireEnvelope.getEmitterPid());
 		long envelopeTimer = System.currentTimeMillis();
 		
-		String scriptPathName = this.options.getScriptPath() + "/" + this.options.getScriptFilename();
-		logger.debug("Script path name: {}", scriptPathName);
+		final List<WireRecord> audioFeatureExtractorWireRecords = this.recordMapper.map(wireEnvelope.getRecords(),
+				this::processRecord);
+		Integer numberOfRecords = audioFeatureExtractorWireRecords.size();
+		logger.debug("Envelope took {}ms to process", System.currentTimeMillis() - envelopeTimer);
+		logger.debug("Emitting {} record(s)...", numberOfRecords);
+		if (numberOfRecords > 0) {
+	    	wireSupport.emit(audioFeatureExtractorWireRecords);
+		}
+		logger.debug("Emitting...done");
+	}
+
+	private void processRecord(WireRecord record, List<WireRecord> output) {
 		
-		final List<WireRecord> audioFeatureExtractorWireRecords = new ArrayList<>();
-		for (WireRecord record : wireEnvelope.getRecords()) {
-			
-			final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
-			String source = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.SOURCE);
-			String audioFilePath = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.PATH);
-			String audioFilename = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.FILENAME);
-			logger.debug("Audio file path: {}", audioFilePath);
-			logger.debug("Audio filename: {}", audioFilename);
-			String inputFileArgument = "--inputfile=" + audioFilePath + "/" + audioFilename;
+		final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
+		String source = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.SOURCE);
+		final List<String> arguments = new ArrayList<>();
+		byte[] input = null;
+		Path sharedFile = null;
+		String audioHandoff = this.audioHandoff;
+		try {
+			if (AUDIO_HANDOFF_STDIN.equals(audioHandoff) || AUDIO_HANDOFF_SHM.equals(audioHandoff)) {
+				byte[] audioData = (byte[]) getPropertyValue(record, DataType.BYTE_ARRAY, AudioWireRecordProperties.AUDIO_DATA);
+				if (isNull(audioData)) {
+					logger.error("Record from source {} carries no audio data", source);
+					output.add(new WireRecord(properties));
+					return;
+				}
+				addFormatArguments(record, arguments);
+				if (AUDIO_HANDOFF_STDIN.equals(audioHandoff)) {
+					arguments.add("--inputlength=" + audioData.length);
+					input = audioData;
+				} else {
+					sharedFile = Files.createTempFile(Paths.get(SHARED_MEMORY_DIRECTORY), "audio-", ".pcm");
+					Files.write(sharedFile, audioData);
+					arguments.add("--inputfile=" + sharedFile);
+				}
+			} else {
+				String audioFilePath = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.PATH);
+				String audioFilename = (String) getPropertyValue(record, DataType.STRING, AudioWireRecordProperties.FILENAME);
+				logger.debug("Audio file path: {}", audioFilePath);
+				logger.debug("Audio filename: {}", audioFilename);
+				arguments.add("--inputfile=" + audioFilePath + "/" + audioFilename);
+			}
 			
-			logger.debug("Arguments: {}", inputFileArgument);
+			logger.debug("Arguments: {}", arguments);
 			
-			SafeProcess process = null;
-			BufferedReader br = null;
-			final String[] command = { scriptPathName, inputFileArgument };
-			logger.debug("Created command: {} {}", command[0], command[1]);
+			BlockingQueue<ScriptWorker> workers = this.workers;
+			if (nonNull(workers)) {
+				requestWorker(workers, arguments.toArray(new String[arguments.size()]), input, properties, source);
+			} else {
+				execute(arguments, input, properties, source);
+			}
+		} catch (final IOException e) {
+			logger.error("Could not hand over audio data", e);
+		} finally {
+			if (nonNull(sharedFile)) {
+				try {
+					Files.deleteIfExists(sharedFile);
+				} catch (final IOException e) {
+					logger.error("Could not delete {}", sharedFile, e);
+				}
+			}
+		}
+		final WireRecord audioFeatureExtractorWireRecord = new WireRecord(properties);
+		output.add(audioFeatureExtractorWireRecord);
+	}
 	
+	private void addFormatArguments(WireRecord record, List<String> arguments) {
+		arguments.add("--samplerate=" + getPropertyValue(record, DataType.FLOAT, AudioWireRecordProperties.SAMPLE_RATE));
+		arguments.add("--samplesize=" + getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.SAMPLE_SIZE));
+		arguments.add("--channels=" + getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.CHANNELS));
+		arguments.add("--signed=" + getPropertyValue(record, DataType.BOOLEAN, AudioWireRecordProperties.SIGNED));
+		arguments.add("--bigendian=" + getPropertyValue(record, DataType.BOOLEAN, AudioWireRecordProperties.BIG_ENDIAN));
+	}
+	
+	private void execute(List<String> arguments, byte[] input, Map<String, TypedValue<?>> properties, String source) {
+		String scriptPathName = this.scriptPathName;
+		long timeout = this.timeout;
+		Semaphore executionPermits = this.executionPermits;
+		final List<String> command = new ArrayList<>();
+		command.add(scriptPathName);
+		command.addAll(arguments);
+		logger.debug("Created command: {}", command);
+
+		Process process = null;
+		boolean permitted = false;
+		final List<String> lines = new ArrayList<>();
+		try {
+			executionPermits.acquire();
+			permitted = true;
+			long deadline = ScriptProcesses.getDeadline(timeout);
+			process = new ProcessBuilder(command).start();
+			String processName = "AudioScriptFeatureExtractor " + source;
+			ScriptProcesses.drainErrors(process, processName);
+			if (nonNull(input)) {
+				ScriptProcesses.feedInput(process, input, processName);
+			}
+			BlockingQueue<String> stdout = ScriptProcesses.drainOutput(process, processName);
+			String line = null;
+			logger.debug("Reading result...");
+			while ((line = ScriptProcesses.nextLine(stdout, deadline)) != null) {
+				lines.add(line);
+			}
+			putResults(lines, properties, source);
+
+			logger.debug("Executing process...Done");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Interrupted while executing process");
+		} catch (TimeoutException e) {
+			// A child of the script may hold stdout open after all results were printed
+			logger.error("Script exceeded timeout of {}ms for source {}, destroying it, keeping {} result line(s)",
+					timeout, source, lines.size());
 			try {
-				process = ProcessUtil.exec(command);
-				br = new BufferedReader(new InputStreamReader(process.getInputStream()));
-				String line = null;
-	
-				logger.debug("Reading result...");
-				while ((line = br.readLine()) != null) {
-					logger.debug("--- " + line);
-					if (line.contains("command not found")) {
-						logger.error("Resetting Command Not Found");
-						throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED);
-					}
-					String[] result = line.split("=");
-					String propertyName = result[0];
-					TypedValue<Double> propertyValue = TypedValues.newDoubleValue(Double.parseDouble(result[1]));
-					requireNonNull(propertyName, "No valid property name found");
-					requireNonNull(propertyValue, "No valid property value found");
-					properties.put(propertyName, propertyValue);
-		        	logger.debug("Creating output record for source {}",
-		        			source);
-				}
-				
-				br = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-				line = null;
-				logger.debug("Reading errors...");
-				while ((line = br.readLine()) != null) {
-					logger.debug("--- " + line);
-					if (line.contains("command not found")) {
-						logger.error("Resetting Command Not Found");
-						throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED);
-					}
-				}
+				putResults(lines, properties, source);
+			} catch (final Exception resultException) {
+				logger.error("Could not apply script results", resultException);
+			}
+		} catch (final Exception e) {
+			logger.error("Could not execute process", e);
+		} finally {
+			if (nonNull(process)) {
+				logger.debug("Destroying Process");
+				ScriptProcesses.destroy(process, true, "AudioScriptFeatureExtractor " + source);
+			}
+			if (permitted) {
+				executionPermits.release();
+			}
+		}
+	}
 	
-				logger.debug("Executing process...Done");
-			} catch (final Exception e) {
-				logger.error("Could not execute process", e);
-			} finally {
-				try {
-					logger.debug("Closing Buffered Reader and destroying Process", process);
-					br.close();
-					process.destroy();
-				} catch (final IOException e) {
-					logger.error("Error closing read buffer", e);
+	private void requestWorker(BlockingQueue<ScriptWorker> workers, String[] arguments, byte[] input,
+			Map<String, TypedValue<?>> properties, String source) {
+		ScriptWorker worker = null;
+		try {
+			worker = workers.take();
+			if (worker.isClosed()) {
+				// The pool was replaced while this record waited, use the current configuration
+				workers.add(worker);
+				worker = null;
+				BlockingQueue<ScriptWorker> currentWorkers = this.workers;
+				if (nonNull(currentWorkers)) {
+					requestWorker(currentWorkers, arguments, input, properties, source);
+				} else {
+					execute(Arrays.asList(arguments), input, properties, source);
+				}
+				return;
+			}
+			logger.debug("Sending request to script worker...");
+			for (String line : worker.request(arguments, input, this.timeout)) {
+				putResult(line, properties, source);
+			}
+			logger.debug("Sending request to script worker...Done");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("Interrupted while waiting for a script worker");
+		} catch (TimeoutException e) {
+			logger.error("Script worker timed out, restarting it with the next request: {}", e.getMessage());
+		} catch (final Exception e) {
+			logger.error("Could not process request", e);
+		} finally {
+			if (nonNull(worker)) {
+				workers.add(worker);
+				if (workers != this.workers) {
+					// The pool was replaced while this worker was busy
+					closeWorkers(workers);
 				}
 			}
-			final WireRecord audioFeatureExtractorWireRecord = new WireRecord(properties);
-			audioFeatureExtractorWireRecords.add(audioFeatureExtractorWireRecord);
 		}
-		Integer numberOfRecords = audioFeatureExtractorWireRecords.size();
-		logger.debug("Envelope took {}ms to process", System.currentTimeMillis() - envelopeTimer);
-		logger.debug("Emitting {} record(s)...", numberOfRecords);
-		if (numberOfRecords > 0) {
-	    	wireSupport.emit(audioFeatureExtractorWireRecords);
+	}
+	
+	private void putResults(List<String> lines, Map<String, TypedValue<?>> properties, String source)
+			throws KuraException {
+		for (String line : lines) {
+			putResult(line, properties, source);
 		}
-		logger.debug("Emitting...done");
 	}
-
+	
+	private void putResult(String line, Map<String, TypedValue<?>> properties, String source) throws KuraException {
+		logger.debug("--- " + line);
+		if (line.contains("command not found")) {
+			logger.error("Resetting Command Not Found");
+			throw new KuraException(KuraErrorCode.OPERATION_NOT_SUPPORTED);
+		}
+		String[] result = line.split("=");
+		String propertyName = result[0];
+		TypedValue<Double> propertyValue = TypedValues.newDoubleValue(Double.parseDouble(result[1]));
+		requireNonNull(propertyName, "No valid property name found");
+		requireNonNull(propertyValue, "No valid property value found");
+		properties.put(propertyName, propertyValue);
+		logger.debug("Creating output record for source {}",
+				source);
+	}
+	
 	private void extractProperties(final Map<String, Object> properties) {
         requireNonNull(properties, "Properties cannot be null");
         this.options = new AudioScriptFeatureExtractorOptions(properties);
+        this.scriptPathName = this.options.getScriptPath() + "/" + this.options.getScriptFilename();
+        logger.debug("Script path name: {}", this.scriptPathName);
+        this.timeout = nonNull(this.options.getScriptTimeout()) ? Math.max(this.options.getScriptTimeout(), 0) : 0;
+        this.audioHandoff = this.options.getAudioHandoff();
+        destroyWorkers();
+        int parallelism = nonNull(this.options.getMaxConcurrency()) ? Math.max(this.options.getMaxConcurrency(), 1) : 1;
+        // Bounds the processes of all envelopes, which may be received concurrently from several wires
+        this.executionPermits = new Semaphore(parallelism);
+        if (SCRIPT_MODE_WORKER.equals(this.options.getScriptMode())) {
+        	parallelism = nonNull(this.options.getScriptWorkers()) ? Math.max(this.options.getScriptWorkers(), 1) : 1;
+        	BlockingQueue<ScriptWorker> workers = new LinkedBlockingQueue<>();
+        	for (int i = 0; i < parallelism; i++) {
+        		workers.add(new ScriptWorker(this.scriptPathName, "AudioScriptFeatureExtractor worker " + (i + 1)));
+        	}
+        	logger.info("Running {} script worker(s)", parallelism);
+        	this.workers = workers;
+        }
+        this.recordMapper = ParallelRecordMapper.reconfigure(this.recordMapper, "AudioScriptFeatureExtractor",
+        		parallelism);
     }
 	
+	private void destroyWorkers() {
+		BlockingQueue<ScriptWorker> workers = this.workers;
+		this.workers = null;
+		if (nonNull(workers)) {
+			// Busy workers are closed when they are handed back
+			closeWorkers(workers);
+		}
+	}
+
+	/**
+	 * Closes the idle workers of a retired pool and puts them back, so a record still
+	 * waiting for a worker of that pool takes a closed one and moves on to the current pool.
+	 */
+	private static void closeWorkers(BlockingQueue<ScriptWorker> workers) {
+		List<ScriptWorker> idleWorkers = new ArrayList<>();
+		workers.drainTo(idleWorkers);
+		for (ScriptWorker worker : idleWorkers) {
+			worker.close();
+		}
+		workers.addAll(idleWorkers);
+	}
+	
 	private Object getPropertyValue(WireRecord record, DataType expectedType, String propertyName) {
 		TypedValue<?> property = record.getProperties().get(propertyName);
-		if (property.getType() == expectedType) {
+		if (nonNull(property) && property.getType() == expectedType) {
 			return property.getValue();
 		} else {
 			return null;
@@ -9,6 +9,11 @@ public class AudioScriptFeatureExtractorOptions {
 	
 	private static final String SCRIPT_PATH = "script.path";
 	private static final String SCRIPT_FILENAME = "script.filename";
+	private static final String SCRIPT_MODE = "script.mode";
+	private static final String SCRIPT_WORKERS = "script.workers";
+	private static final String SCRIPT_TIMEOUT = "script.timeout";
+	private static final String MAX_CONCURRENCY = "max.concurrency";
+	private static final String AUDIO_HANDOFF = "audio.handoff";
 	
 	private final Map<String, Object> properties;
 	
@@ -34,4 +39,49 @@ public class AudioScriptFeatureExtractorOptions {
 		}
 		return scriptFilename;
 	}
+	
+	String getScriptMode() {
+		String scriptMode = null;
+		final Object sm = this.properties.get(SCRIPT_MODE);
+		if (nonNull(sm) && (sm instanceof String)) {
+			scriptMode = (String) sm;
+		}
+		return scriptMode;
+	}
+	
+	Integer getScriptWorkers() {
+		Integer scriptWorkers = null;
+		final Object sw = this.properties.get(SCRIPT_WORKERS);
+		if (nonNull(sw) && (sw instanceof Integer)) {
+			scriptWorkers = (Integer) sw;
+		}
+		return scriptWorkers;
+	}
+	
+	Integer getScriptTimeout() {
+		Integer scriptTimeout = null;
+		final Object st = this.properties.get(SCRIPT_TIMEOUT);
+		if (nonNull(st) && (st instanceof Integer)) {
+			scriptTimeout = (Integer) st;
+		}
+		return scriptTimeout;
+	}
+	
+	Integer getMaxConcurrency() {
+		Integer maxConcurrency = null;
+		final Object mc = this.properties.get(MAX_CONCURRENCY);
+		if (nonNull(mc) && (mc instanceof Integer)) {
+			maxConcurrency = (Integer) mc;
+		}
+		return maxConcurrency;
+	}
+	
+	String getAudioHandoff() {
+		String audioHandoff = null;
+		final Object ah = this.properties.get(AUDIO_HANDOFF);
+		if (nonNull(ah) && (ah instanceof String)) {
+			audioHandoff = (String) ah;
+		}
+		return audioHandoff;
+	}
 }
@@ -0,0 +1,197 @@
+package de.db.i4i.kura.wire.audio.featureextractor;
+
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.ENCODING_FLOAT32_LE;
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.ENCODING_FLOAT64_BE;
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.encodeDoubleArray;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kura.configuration.ConfigurableComponent;
+import org.eclipse.kura.type.DataType;
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+import org.eclipse.kura.wire.WireEmitter;
+import org.eclipse.kura.wire.WireEnvelope;
+import org.eclipse.kura.wire.WireHelperService;
+import org.eclipse.kura.wire.WireReceiver;
+import org.eclipse.kura.wire.WireRecord;
+import org.eclipse.kura.wire.WireSupport;
+import org.osgi.service.wireadmin.Wire;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.db.i4i.kura.wire.audio.AudioWireRecordProperties;
+import de.db.i4i.kura.wire.audio.ParallelRecordMapper;
+import de.db.i4i.kura.wire.audio.dsp.ShortTimeSpectrum;
+import de.db.i4i.kura.wire.audio.dsp.ThreadLocalDoubleArray;
+
+/**
+ * Combines AudioMagSpectrumFeatureExtractor and AudioMFCCFeatureExtractor, so the
+ * spectrum is handed to the MFCC as double[] instead of travelling over a wire as byte[].
+ */
+public class AudioSpectralFeatureExtractor implements WireEmitter, ConfigurableComponent, WireReceiver {
+
+private static final Logger logger = LoggerFactory.getLogger(AudioSpectralFeatureExtractor.class);
+	
+    private volatile WireHelperService wireHelperService;
+	private WireSupport wireSupport;
+	
+	private AudioSpectralFeatureExtractorOptions options;
+	private volatile ParallelRecordMapper recordMapper;
+	private volatile ShortTimeSpectrum shortTimeSpectrum;
+	private final ThreadLocalDoubleArray samples = new ThreadLocalDoubleArray();
+	private final ThreadLocalDoubleArray spectrum = new ThreadLocalDoubleArray();
+	private final ThreadLocalDoubleArray spectrogram = new ThreadLocalDoubleArray();
+
+	public void bindWireHelperService(final WireHelperService wireHelperService) {
+        if (isNull(this.wireHelperService)) {
+            this.wireHelperService = wireHelperService;
+        }
+    }
+
+    public void unbindWireHelperService(final WireHelperService wireHelperService) {
+        if (this.wireHelperService == wireHelperService) {
+            this.wireHelperService = null;
+        }
+    }
+	
+	protected synchronized void activate(final Map<String, Object> properties) {
+		logger.debug("Activating AudioSpectralFeatureExtractor...");
+		wireSupport = this.wireHelperService.newWireSupport(this);
+        this.extractProperties(properties);
+        logger.debug("Activating AudioSpectralFeatureExtractor... Done");
+	}
+	
+	protected synchronized void deactivate() {
+		logger.debug("Deactivating AudioSpectralFeatureExtractor...");
+		if (nonNull(this.recordMapper)) {
+			this.recordMapper.shutdown();
+			this.recordMapper = null;
+		}
+        logger.debug("Deactivating AudioSpectralFeatureExtractor... Done");
+	}
+	
+	public synchronized void updated(final Map<String, Object> properties) {
+		logger.debug("Updating AudioSpectralFeatureExtractor...");
+        this.extractProperties(properties);
+        logger.debug("Updating AudioSpectralFeatureExtractor... Done");
+	}
+	
+	@Override
+    public Object polled(Wire wire) {
+        return this.wireSupport.polled(wire);
+    }
+
+    @Override
+    public void consumersConnected(Wire[] wires) {
+        this.wireSupport.consumersConnected(wires);
+    }
+
+    @Override
+    public void updated(Wire wire, Object value) {
+        this.wireSupport.updated(wire, value);
+    }
+
+    @Override
+    public void producersConnected(Wire[] wires) {
+        this.wireSupport.producersConnected(wires);
+    }
+
+	@Override
+	public void onWireReceive(WireEnvelope wireEnvelope) {
+		requireNonNull(wireEnvelope, "Wire envelope must not be null");
+		logger.debug("Received wire envelope with {} record(s) from {}", wireEnvelope.getRecords().size(),
+				wireEnvelope.getEmitterPid());
+		long envelopeTimer = System.currentTimeMillis();
+		
+		final List<WireRecord> audioSpectralFeatureExtractorWireRecords = this.recordMapper.map(wireEnvelope.getRecords(),
+				this::processRecord);
+		Integer numberOfRecords = audioSpectralFeatureExtractorWireRecords.size();
+		logger.debug("Envelope took {}ms to process", System.currentTimeMillis() - envelopeTimer);
+		logger.debug("Emitting {} record(s)...", numberOfRecords);
+		if (numberOfRecords > 0) {
+	    	wireSupport.emit(audioSpectralFeatureExtractorWireRecords);
+		}
+		logger.debug("Emitting...done");
+	}
+
+	private void processRecord(WireRecord record, List<WireRecord> output) {
+		
+		logger.debug("Extracting properties from record...");
+		final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
+		Float sampleRate = (Float) this.getPropertyValue(record, DataType.FLOAT, AudioWireRecordProperties.SAMPLE_RATE);
+		Integer sampleSize = (Integer) this.getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.SAMPLE_SIZE);
+		Integer channels = (Integer) this.getPropertyValue(record, DataType.INTEGER, AudioWireRecordProperties.CHANNELS);
+		Boolean signed = (Boolean) this.getPropertyValue(record, DataType.BOOLEAN, AudioWireRecordProperties.SIGNED);
+		Boolean bigEndian = (Boolean) this.getPropertyValue(record, DataType.BOOLEAN, AudioWireRecordProperties.BIG_ENDIAN);
+		byte[] audioData = (byte[]) this.getPropertyValue(record, DataType.BYTE_ARRAY, AudioWireRecordProperties.AUDIO_DATA);
+		logger.debug("Extracting properties from record...Done");
+		try {
+			long featureTimer = System.currentTimeMillis();
+			double[] samplesMixedDown = SpectralFeatures.decodeMixedDown(audioData, sampleSize, channels, signed,
+					bigEndian, this.samples);
+			double[] msFeature = magnitudeSpectrum(samplesMixedDown);
+			logger.debug("Extracting magnitude spectrum took {}ms", System.currentTimeMillis() - featureTimer);
+			if (!Boolean.FALSE.equals(this.options.isOutputMfcc())) {
+				long mfccTimer = System.currentTimeMillis();
+				double[] mfccFeature = SpectralFeatures.mfcc(msFeature, sampleRate, this.options.getMfccImplementation(),
+						this.options.getMfccFilters(), this.options.getMfccCoefficients(),
+						this.options.getMfccMinFrequency(), this.options.getMfccMaxFrequency());
+				MfccFeatureOutput.put(properties, mfccFeature, this.options.getMfccOutput());
+				logger.debug("Extracting MFCC took {}ms", System.currentTimeMillis() - mfccTimer);
+			}
+			if (Boolean.TRUE.equals(this.options.isOutputMagnitudeSpectrum())) {
+				String spectrumEncoding = ENCODING_FLOAT32_LE.equals(this.options.getSpectrumEncoding())
+						? ENCODING_FLOAT32_LE : ENCODING_FLOAT64_BE;
+				properties.put(AudioWireRecordProperties.MAGNITUDE_SPECTRUM, TypedValues.newByteArrayValue(
+						encodeDoubleArray(msFeature, 0, msFeature.length, spectrumEncoding)));
+				properties.put(AudioWireRecordProperties.SPECTRUM_ENCODING, TypedValues.newStringValue(spectrumEncoding));
+			}
+		} catch (Exception e) {
+			logger.error("Could not extract feature:", e);
+		}
+		properties.remove(AudioWireRecordProperties.AUDIO_DATA);
+		final WireRecord audioSpectralFeatureExtractorWireRecord = new WireRecord(properties);
+		output.add(audioSpectralFeatureExtractorWireRecord);
+	}
+	
+	private void extractProperties(final Map<String, Object> properties) {
+        requireNonNull(properties, "Properties cannot be null");
+        this.options = new AudioSpectralFeatureExtractorOptions(properties);
+        this.recordMapper = ParallelRecordMapper.reconfigure(this.recordMapper, "AudioSpectralFeatureExtractor",
+        		this.options.getParallelism());
+        this.shortTimeSpectrum = SpectralFeatures.newShortTimeSpectrum(this.options.getSpectrumMode(),
+        		this.options.getStftFrameSize(), this.options.getStftHopSize(), this.options.getStftWindow(), true);
+    }
+	
+	// The whole-sample spectrum matches jAudio's MagnitudeSpectrum, STFT frame spectra are averaged
+	private double[] magnitudeSpectrum(double[] samples) throws Exception {
+		ShortTimeSpectrum stft = this.shortTimeSpectrum;
+		if (stft == null) {
+			return SpectralFeatures.magnitudeSpectrum(samples, this.spectrum);
+		}
+		int bins = stft.getBinCount();
+		int spectrogramLength = stft.getFrameCount(samples.length) * bins;
+		double[] spectrogram = this.spectrogram.get(spectrogramLength);
+		int frames = stft.compute(samples, samples.length, spectrogram);
+		return ShortTimeSpectrum.average(spectrogram, frames, bins);
+	}
+	
+	private Object getPropertyValue(WireRecord record, DataType expectedType, String propertyName) {
+		logger.debug("Getting property value for {}...", propertyName);
+		TypedValue<?> property = record.getProperties().get(propertyName);
+		if (nonNull(property) && property.getType() == expectedType) {
+			logger.debug("Got value for {}", propertyName);
+			return property.getValue();
+		} else {
+			logger.debug("Value = null");
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package de.db.i4i.kura.wire.audio.featureextractor;
+
+import static java.util.Objects.nonNull;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+
+public class AudioSpectralFeatureExtractorOptions {
+	
+	private static final String SPECTRUM_MODE = "spectrum.mode";
+	private static final String STFT_FRAME_SIZE = "stft.frame.size";
+	private static final String STFT_HOP_SIZE = "stft.hop.size";
+	private static final String STFT_WINDOW = "stft.window";
+	private static final String MFCC_IMPLEMENTATION = "mfcc.implementation";
+	private static final String MFCC_FILTERS = "mfcc.filters";
+	private static final String MFCC_COEFFICIENTS = "mfcc.coefficients";
+	private static final String MFCC_MIN_FREQUENCY = "mfcc.min.frequency";
+	private static final String MFCC_MAX_FREQUENCY = "mfcc.max.frequency";
+	private static final String MFCC_OUTPUT = "mfcc.output";
+	private static final String OUTPUT_MAGNITUDE_SPECTRUM = "output.magnitude.spectrum";
+	private static final String OUTPUT_MFCC = "output.mfcc";
+	private static final String SPECTRUM_ENCODING = "spectrum.encoding";
+	private static final String PARALLELISM = "parallelism";
+	
+	private final Map<String, Object> properties;
+	
+	AudioSpectralFeatureExtractorOptions(final Map<String, Object> properties) {
+		requireNonNull(properties, "Properties must not be null");
+		this.properties = properties;
+	}
+	
+	String getSpectrumMode() {
+		String spectrumMode = null;
+		final Object sm = this.properties.get(SPECTRUM_MODE);
+		if (nonNull(sm) && (sm instanceof String)) {
+			spectrumMode = (String) sm;
+		}
+		return spectrumMode;
+	}
+	
+	Integer getStftFrameSize() {
+		Integer stftFrameSize = null;
+		final Object sfs = this.properties.get(STFT_FRAME_SIZE);
+		if (nonNull(sfs) && (sfs instanceof Integer)) {
+			stftFrameSize = (Integer) sfs;
+		}
+		return stftFrameSize;
+	}
+	
+	Integer getStftHopSize() {
+		Integer stftHopSize = null;
+		final Object shs = this.properties.get(STFT_HOP_SIZE);
+		if (nonNull(shs) && (shs instanceof Integer)) {
+			stftHopSize = (Integer) shs;
+		}
+		return stftHopSize;
+	}
+	
+	String getStftWindow() {
+		String stftWindow = null;
+		final Object sw = this.properties.get(STFT_WINDOW);
+		if (nonNull(sw) && (sw instanceof String)) {
+			stftWindow = (String) sw;
+		}
+		return stftWindow;
+	}
+	
+	String getMfccImplementation() {
+		String mfccImplementation = null;
+		final Object mi = this.properties.get(MFCC_IMPLEMENTATION);
+		if (nonNull(mi) && (mi instanceof String)) {
+			mfccImplementation = (String) mi;
+		}
+		return mfccImplementation;
+	}
+	
+	Integer getMfccFilters() {
+		Integer mfccFilters = null;
+		final Object mf = this.properties.get(MFCC_FILTERS);
+		if (nonNull(mf) && (mf instanceof Integer)) {
+			mfccFilters = (Integer) mf;
+		}
+		return mfccFilters;
+	}
+	
+	Integer getMfccCoefficients() {
+		Integer mfccCoefficients = null;
+		final Object mc = this.properties.get(MFCC_COEFFICIENTS);
+		if (nonNull(mc) && (mc instanceof Integer)) {
+			mfccCoefficients = (Integer) mc;
+		}
+		return mfccCoefficients;
+	}
+	
+	Float getMfccMinFrequency() {
+		Float mfccMinFrequency = null;
+		final Object mmf = this.properties.get(MFCC_MIN_FREQUENCY);
+		if (nonNull(mmf) && (mmf instanceof Float)) {
+			mfccMinFrequency = (Float) mmf;
+		}
+		return mfccMinFrequency;
+	}
+	
+	Float getMfccMaxFrequency() {
+		Float mfccMaxFrequency = null;
+		final Object mmf = this.properties.get(MFCC_MAX_FREQUENCY);
+		if (nonNull(mmf) && (mmf instanceof Float)) {
+			mfccMaxFrequency = (Float) mmf;
+		}
+		return mfccMaxFrequency;
+	}
+	
+	Boolean isOutputMagnitudeSpectrum() {
+		Boolean outputMagnitudeSpectrum = null;
+		final Object oms = this.properties.get(OUTPUT_MAGNITUDE_SPECTRUM);
+		if (nonNull(oms) && (oms instanceof Boolean)) {
+			outputMagnitudeSpectrum = (Boolean) oms;
+		}
+		return outputMagnitudeSpectrum;
+	}
+	
+	Boolean isOutputMfcc() {
+		Boolean outputMfcc = null;
+		final Object om = this.properties.get(OUTPUT_MFCC);
+		if (nonNull(om) && (om instanceof Boolean)) {
+			outputMfcc = (Boolean) om;
+		}
+		return outputMfcc;
+	}
+	
+	String getSpectrumEncoding() {
+		String spectrumEncoding = null;
+		final Object se = this.properties.get(SPECTRUM_ENCODING);
+		if (nonNull(se) && (se instanceof String)) {
+			spectrumEncoding = (String) se;
+		}
+		return spectrumEncoding;
+	}
+	
+	String getMfccOutput() {
+		String mfccOutput = null;
+		final Object mo = this.properties.get(MFCC_OUTPUT);
+		if (nonNull(mo) && (mo instanceof String)) {
+			mfccOutput = (String) mo;
+		}
+		return mfccOutput;
+	}
+	
+	Integer getParallelism() {
+		Integer parallelism = null;
+		final Object p = this.properties.get(PARALLELISM);
+		if (nonNull(p) && (p instanceof Integer)) {
+			parallelism = (Integer) p;
+		}
+		return parallelism;
+	}
+}
@@ -0,0 +1,62 @@
+package de.db.i4i.kura.wire.audio.featureextractor;
+
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.doubleArrayToByteArray;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.kura.type.TypedValue;
+import org.eclipse.kura.type.TypedValues;
+
+import de.db.i4i.kura.wire.audio.AudioWireRecordProperties;
+
+/**
+ * Puts MFCCs into a record as one double property per coefficient, as one packed
+ * feature vector with its schema, or both.
+ */
+final class MfccFeatureOutput {
+	
+	static final String MFCC_OUTPUT_PACKED = "packed";
+	static final String MFCC_OUTPUT_BOTH = "both";
+	
+	private static final String MFCC_FEATURE_PREFIX = "feature_mfcc_coeff_";
+	
+	// Schemas only depend on the number of coefficients
+	private static final ConcurrentMap<Integer, String> schemas = new ConcurrentHashMap<>();
+	
+	private MfccFeatureOutput() {
+	}
+	
+	static void put(Map<String, TypedValue<?>> properties, double[] mfccFeature, String mfccOutput) {
+		boolean packed = MFCC_OUTPUT_PACKED.equals(mfccOutput) || MFCC_OUTPUT_BOTH.equals(mfccOutput);
+		boolean scalar = !MFCC_OUTPUT_PACKED.equals(mfccOutput);
+		if (scalar) {
+			for (Integer i = 0; i < mfccFeature.length; i++) {
+				properties.put(MFCC_FEATURE_PREFIX + i.toString(), TypedValues.newDoubleValue(mfccFeature[i]));
+			}
+		}
+		if (packed) {
+			properties.put(AudioWireRecordProperties.FEATURE_VECTOR,
+					TypedValues.newByteArrayValue(doubleArrayToByteArray(mfccFeature)));
+			properties.put(AudioWireRecordProperties.FEATURE_SCHEMA,
+					TypedValues.newStringValue(getSchema(mfccFeature.length)));
+		}
+	}
+	
+	private static String getSchema(int coefficients) {
+		String schema = schemas.get(coefficients);
+		if (schema == null) {
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < coefficients; i++) {
+				if (i > 0) {
+					builder.append(',');
+				}
+				builder.append(MFCC_FEATURE_PREFIX).append(i);
+			}
+			schema = builder.toString();
+			schemas.putIfAbsent(coefficients, schema);
+		}
+		return schema;
+	}
+}
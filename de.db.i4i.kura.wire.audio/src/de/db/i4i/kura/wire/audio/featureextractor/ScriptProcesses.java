@@ -0,0 +1,178 @@
+package de.db.i4i.kura.wire.audio.featureextractor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process helpers shared by the exec and the worker mode of {@link AudioScriptFeatureExtractor}.
+ *
+ * stdout and stderr are drained on threads of their own, so a script filling either
+ * pipe cannot block, and the caller waits for stdout lines with a deadline. Blocking
+ * reads cannot be timed out reliably, a child of a killed script may keep the pipe open.
+ */
+final class ScriptProcesses {
+
+	private static final Logger logger = LoggerFactory.getLogger(ScriptProcesses.class);
+
+	// Compared by identity, an empty line is a valid line
+	private static final String END_OF_STREAM = new String();
+	// Compared by identity, stops a writer thread
+	private static final byte[][] END_OF_REQUESTS = new byte[0][];
+
+	private ScriptProcesses() {
+	}
+
+	static BlockingQueue<String> drainOutput(Process process, final String name) {
+		final BufferedReader stdout = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+		Thread stdoutDrain = new Thread(() -> {
+			try {
+				String line;
+				while ((line = stdout.readLine()) != null) {
+					lines.add(line);
+				}
+			} catch (IOException e) {
+				logger.debug("{}: stdout closed", name);
+			} finally {
+				lines.add(END_OF_STREAM);
+			}
+		}, name + " stdout");
+		stdoutDrain.setDaemon(true);
+		stdoutDrain.start();
+		return lines;
+	}
+
+	/**
+	 * Writes input to the script's stdin and closes it, on a thread of its own so a
+	 * script that does not read its input cannot block the caller past its deadline.
+	 */
+	static void feedInput(Process process, final byte[] input, final String name) {
+		final OutputStream stdin = process.getOutputStream();
+		Thread stdinFeed = new Thread(() -> {
+			try {
+				stdin.write(input);
+				stdin.close();
+			} catch (IOException e) {
+				logger.debug("{}: stdin closed", name);
+			}
+		}, name + " stdin");
+		stdinFeed.setDaemon(true);
+		stdinFeed.start();
+	}
+
+	/**
+	 * Starts the thread that writes the requests of a worker to its stdin. Each request is
+	 * written part by part and flushed, stdin stays open for later requests. Like
+	 * {@link #feedInput} this keeps a worker that stops reading from blocking the caller
+	 * past its deadline, and the thread lives as long as the worker process.
+	 */
+	static BlockingQueue<byte[][]> startWriter(Process process, final String name) {
+		final OutputStream stdin = process.getOutputStream();
+		final BlockingQueue<byte[][]> requests = new LinkedBlockingQueue<>();
+		Thread writer = new Thread(() -> {
+			try {
+				byte[][] request;
+				while ((request = requests.take()) != END_OF_REQUESTS) {
+					for (byte[] part : request) {
+						stdin.write(part);
+					}
+					stdin.flush();
+				}
+			} catch (IOException e) {
+				logger.debug("{}: stdin closed", name);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, name + " stdin");
+		writer.setDaemon(true);
+		writer.start();
+		return requests;
+	}
+
+	/**
+	 * Ends the thread started by {@link #startWriter} after the requests queued so far.
+	 */
+	static void stopWriter(BlockingQueue<byte[][]> requests) {
+		requests.add(END_OF_REQUESTS);
+	}
+
+	/**
+	 * Kills a script process on a thread of its own. Closing the process streams waits
+	 * for a blocked {@link #feedInput} or {@link #startWriter} thread, whose pipe may be held
+	 * open by a child of the script, so the caller must not do it itself.
+	 */
+	static void destroy(final Process process, final boolean forcibly, final String name) {
+		Thread reaper = new Thread(() -> {
+			if (forcibly) {
+				process.destroyForcibly();
+			} else {
+				process.destroy();
+			}
+			logger.debug("{}: Script process destroyed", name);
+		}, name + " destroy");
+		reaper.setDaemon(true);
+		reaper.start();
+	}
+
+	static void drainErrors(Process process, final String name) {
+		final BufferedReader stderr = new BufferedReader(
+				new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8));
+		Thread stderrDrain = new Thread(() -> {
+			try {
+				String line;
+				while ((line = stderr.readLine()) != null) {
+					if (line.contains("command not found")) {
+						logger.error("{} stderr: {}", name, line);
+					} else {
+						logger.debug("{} stderr: {}", name, line);
+					}
+				}
+			} catch (IOException e) {
+				logger.debug("{}: stderr closed", name);
+			}
+		}, name + " stderr");
+		stderrDrain.setDaemon(true);
+		stderrDrain.start();
+	}
+
+	/**
+	 * Returns a deadline for {@link #nextLine}, 0 if the timeout is not positive.
+	 */
+	static long getDeadline(long timeout) {
+		return timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+	}
+
+	/**
+	 * Waits for the next line drained by {@link #drainOutput}.
+	 *
+	 * @param deadline the {@link System#nanoTime()} to wait until, 0 waits indefinitely
+	 * @return null at the end of the stream, which is returned again on later calls
+	 */
+	static String nextLine(BlockingQueue<String> lines, long deadline) throws InterruptedException, TimeoutException {
+		String line;
+		if (deadline == 0) {
+			line = lines.take();
+		} else {
+			line = lines.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+			if (line == null) {
+				throw new TimeoutException("No output before the deadline");
+			}
+		}
+		if (line == END_OF_STREAM) {
+			lines.add(END_OF_STREAM);
+			return null;
+		}
+		return line;
+	}
+}
@@ -0,0 +1,142 @@
+package de.db.i4i.kura.wire.audio.featureextractor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-lived feature script process, started with --worker.
+ *
+ * Each request is one line on the script's stdin holding its command line arguments,
+ * separated by tabs. Audio handed over through stdin follows that line as raw bytes,
+ * their number is given by the --inputlength argument. The script answers with name=value lines on stdout, followed by
+ * an empty line. stderr is drained and logged by a separate thread. If the process
+ * dies it is started again on the next request, a request that exceeds its timeout
+ * kills the process so the next request starts a fresh one. A closed worker never
+ * starts a process again.
+ */
+public class ScriptWorker {
+
+	private static final Logger logger = LoggerFactory.getLogger(ScriptWorker.class);
+
+	static final String WORKER_ARGUMENT = "--worker";
+
+	private final String scriptPathName;
+	private final String name;
+
+	private Process process;
+	private BlockingQueue<byte[][]> stdin;
+	private BlockingQueue<String> stdout;
+	private volatile boolean closed;
+
+	public ScriptWorker(String scriptPathName, String name) {
+		this.scriptPathName = scriptPathName;
+		this.name = name;
+	}
+
+	/**
+	 * Sends one request and returns the lines of the response, without the terminating empty line.
+	 * A crashed process is restarted and the request is retried once, a timed out request is not retried.
+	 *
+	 * @param input raw bytes written after the argument line, or null
+	 * @param timeout the maximum time in milliseconds to wait for the response, 0 waits indefinitely
+	 */
+	public synchronized List<String> request(String[] arguments, byte[] input, long timeout)
+			throws IOException, TimeoutException, InterruptedException {
+		if (this.closed) {
+			throw new IOException("Script worker was closed");
+		}
+		try {
+			return send(arguments, input, timeout);
+		} catch (IOException e) {
+			logger.warn("{}: Script process failed, restarting: {}", this.name, e.getMessage());
+			destroy();
+			return send(arguments, input, timeout);
+		}
+	}
+
+	public synchronized boolean isAlive() {
+		return this.process != null && this.process.isAlive();
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Destroys the process and refuses later requests. Waits for a request in progress.
+	 */
+	public synchronized void close() {
+		this.closed = true;
+		destroy();
+	}
+
+	public synchronized void destroy() {
+		if (this.process == null) {
+			return;
+		}
+		// Also closes stdin, the script sees the end of its input
+		ScriptProcesses.stopWriter(this.stdin);
+		ScriptProcesses.destroy(this.process, false, this.name);
+		this.process = null;
+		this.stdin = null;
+		this.stdout = null;
+	}
+
+	private List<String> send(String[] arguments, byte[] input, long timeout)
+			throws IOException, TimeoutException, InterruptedException {
+		if (!isAlive()) {
+			start();
+		}
+		long deadline = ScriptProcesses.getDeadline(timeout);
+		// Written by the writer thread, the deadline covers the write as well as the response
+		byte[] requestLine = (String.join("\t", arguments) + "\n").getBytes(StandardCharsets.UTF_8);
+		this.stdin.add(input != null ? new byte[][] { requestLine, input } : new byte[][] { requestLine });
+		List<String> lines = new ArrayList<>();
+		String line;
+		try {
+			while ((line = ScriptProcesses.nextLine(this.stdout, deadline)) != null) {
+				if (line.isEmpty()) {
+					return lines;
+				}
+				lines.add(line);
+			}
+		} catch (TimeoutException e) {
+			logger.warn("{}: No response within {}ms, destroying script process", this.name, timeout);
+			ScriptProcesses.stopWriter(this.stdin);
+			ScriptProcesses.destroy(this.process, true, this.name);
+			this.process = null;
+			this.stdin = null;
+			this.stdout = null;
+			throw new TimeoutException(this.name + ": No response within " + timeout + "ms");
+		}
+		throw new IOException("Script closed stdout with exit value " + exitValue());
+	}
+
+	private void start() throws IOException {
+		if (this.closed) {
+			throw new IOException("Script worker was closed");
+		}
+		destroy();
+		logger.info("{}: Starting script process {}", this.name, this.scriptPathName);
+		ProcessBuilder processBuilder = new ProcessBuilder(this.scriptPathName, WORKER_ARGUMENT);
+		this.process = processBuilder.start();
+		this.stdin = ScriptProcesses.startWriter(this.process, this.name);
+		this.stdout = ScriptProcesses.drainOutput(this.process, this.name);
+		ScriptProcesses.drainErrors(this.process, this.name);
+	}
+
+	private String exitValue() {
+		try {
+			return String.valueOf(this.process.exitValue());
+		} catch (IllegalThreadStateException e) {
+			return "unknown, still running";
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package de.db.i4i.kura.wire.audio.featureextractor;
+
+import static java.util.Objects.nonNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.db.i4i.kura.wire.audio.dsp.FftPlan;
+import de.db.i4i.kura.wire.audio.dsp.MfccPlan;
+import de.db.i4i.kura.wire.audio.dsp.PcmDecoder;
+import de.db.i4i.kura.wire.audio.dsp.ShortTimeSpectrum;
+import de.db.i4i.kura.wire.audio.dsp.ThreadLocalDoubleArray;
+import de.db.i4i.kura.wire.audio.dsp.WindowFunction;
+import jAudioFeatureExtractor.AudioFeatures.MFCC;
+
+/**
+ * Spectrum and MFCC steps shared by AudioMagSpectrumFeatureExtractor, AudioMFCCFeatureExtractor
+ * and AudioSpectralFeatureExtractor. Results are written to the caller's per-thread arrays.
+ */
+final class SpectralFeatures {
+
+	private static final Logger logger = LoggerFactory.getLogger(SpectralFeatures.class);
+
+	static final String SPECTRUM_MODE_STFT = "stft";
+	static final String MFCC_IMPLEMENTATION_BUILTIN = "builtin";
+
+	private static final int DEFAULT_STFT_FRAME_SIZE = 1024;
+	private static final int DEFAULT_MFCC_FILTERS = 23;
+	private static final int DEFAULT_MFCC_COEFFICIENTS = 13;
+	private static final double DEFAULT_MFCC_MIN_FREQUENCY = 133.3334;
+	private static final double DEFAULT_MFCC_MAX_FREQUENCY = 6855.4976;
+
+	private SpectralFeatures() {
+	}
+
+	/**
+	 * Returns the short-time spectrum configured by the options, or null unless the spectrum mode is stft.
+	 */
+	static ShortTimeSpectrum newShortTimeSpectrum(String spectrumMode, Integer stftFrameSize, Integer stftHopSize,
+			String stftWindow, boolean builtinFft) {
+		if (!SPECTRUM_MODE_STFT.equals(spectrumMode)) {
+			return null;
+		}
+		int frameSize = nonNull(stftFrameSize) ? stftFrameSize : DEFAULT_STFT_FRAME_SIZE;
+		int hopSize = nonNull(stftHopSize) ? stftHopSize : frameSize / 2;
+		WindowFunction windowFunction = WindowFunction.fromName(stftWindow);
+		logger.info("STFT with frame size {}, hop size {} and {} window", frameSize, hopSize, windowFunction);
+		return new ShortTimeSpectrum(frameSize, hopSize, windowFunction, builtinFft);
+	}
+
+	// The spectrum is computed over the whole array, so it is only reused while the window length stays the same
+	static double[] decodeMixedDown(byte[] audioData, int sampleSize, int channels, boolean signed, boolean bigEndian,
+			ThreadLocalDoubleArray samples) {
+		int frames = PcmDecoder.getFrameCount(audioData.length, sampleSize, channels);
+		double[] values = samples.get(frames);
+		PcmDecoder.decodeMixedDown(audioData, audioData.length, sampleSize, channels, signed, bigEndian, values);
+		return values;
+	}
+
+	// Same result as jAudio's MagnitudeSpectrum: Hann window over the zero-padded length, scaled by 1 / N
+	static double[] magnitudeSpectrum(double[] samples, ThreadLocalDoubleArray spectrum) {
+		FftPlan plan = FftPlan.forSize(FftPlan.getFftSize(samples.length));
+		double[] values = spectrum.get(plan.getBinCount());
+		plan.magnitudeSpectrum(samples, 0, samples.length, plan.getHannWindow(), values);
+		return values;
+	}
+
+	/**
+	 * Returns the MFCCs of a magnitude spectrum, with the built-in {@link MfccPlan} or with jAudio's MFCC.
+	 * Parameters that are null take the defaults, which match jAudio.
+	 */
+	static double[] mfcc(double[] spectrum, Float sampleRate, String implementation, Integer filters,
+			Integer coefficients, Float minFrequency, Float maxFrequency) throws Exception {
+		if (MFCC_IMPLEMENTATION_BUILTIN.equals(implementation)) {
+			MfccPlan plan = MfccPlan.forParameters(sampleRate, spectrum.length,
+					nonNull(filters) ? filters : DEFAULT_MFCC_FILTERS,
+					nonNull(coefficients) ? coefficients : DEFAULT_MFCC_COEFFICIENTS,
+					nonNull(minFrequency) ? minFrequency : DEFAULT_MFCC_MIN_FREQUENCY,
+					nonNull(maxFrequency) ? maxFrequency : DEFAULT_MFCC_MAX_FREQUENCY);
+			double[] mfccFeature = new double[plan.getCoefficientCount()];
+			plan.compute(spectrum, 0, mfccFeature, 0);
+			return mfccFeature;
+		}
+		MFCC mfcc = new MFCC();
+		return mfcc.extractFeature(null, sampleRate.doubleValue(), new double[][] { spectrum });
+	}
+}
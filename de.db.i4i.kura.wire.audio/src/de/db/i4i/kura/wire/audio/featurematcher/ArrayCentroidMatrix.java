@@ -0,0 +1,47 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+/**
+ * A centroid matrix on the heap, compiled from a JSON codebook.
+ */
+final class ArrayCentroidMatrix implements CentroidMatrix {
+
+	private final double[] values;
+	private final int rows;
+	private final int dimension;
+
+	ArrayCentroidMatrix(double[] values, int rows, int dimension) {
+		this.values = values;
+		this.rows = rows;
+		this.dimension = dimension;
+	}
+
+	@Override
+	public int getRows() {
+		return this.rows;
+	}
+
+	@Override
+	public int getDimension() {
+		return this.dimension;
+	}
+
+	@Override
+	public double get(int row, int column) {
+		return this.values[row * this.dimension + column];
+	}
+
+	@Override
+	public double distance2(int row, double[] featureVector, double bound) {
+		final double[] values = this.values;
+		final int offset = row * this.dimension;
+		double distance2 = 0.0;
+		for (int i = 0; i < featureVector.length; i++) {
+			double d = values[offset + i] - featureVector[i];
+			distance2 += d * d;
+			if (distance2 >= bound) {
+				break;
+			}
+		}
+		return distance2;
+	}
+}
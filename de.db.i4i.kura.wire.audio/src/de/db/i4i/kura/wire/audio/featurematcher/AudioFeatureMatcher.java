@@ -3,17 +3,26 @@ package de.db.i4i.kura.wire.audio.featurematcher;
 import static de.db.i4i.kura.wire.audio.AudioWireRecordProperties.ANOMALY_CLASS_DESCRIPTION;
 import static de.db.i4i.kura.wire.audio.AudioWireRecordProperties.ANOMALY_CLASS_ID;
 import static de.db.i4i.kura.wire.audio.AudioWireRecordProperties.DISTORTION;
+import static de.db.i4i.kura.wire.audio.AudioWireRecordProperties.DISTORTION_MARGIN;
+import static de.db.i4i.kura.wire.audio.AudioWireRecordProperties.FEATURE_SCHEMA;
+import static de.db.i4i.kura.wire.audio.AudioWireRecordProperties.FEATURE_VECTOR;
+import static de.db.i4i.kura.wire.audio.AudioWireRecordProperties.MATCH_CONFIDENCE;
+import static de.db.i4i.kura.wire.audio.AudioWireUtils.byteArrayToDoubleArray;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static java.util.Objects.requireNonNull;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eclipse.kura.KuraRuntimeException;
 import org.eclipse.kura.configuration.ConfigurableComponent;
@@ -30,11 +39,7 @@ import org.osgi.service.wireadmin.Wire;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.eclipsesource.json.Json;
-import com.eclipsesource.json.JsonArray;
-import com.eclipsesource.json.JsonObject;
-import com.eclipsesource.json.JsonObject.Member;
-import com.eclipsesource.json.JsonValue;
+import de.db.i4i.kura.wire.audio.ParallelRecordMapper;
 
 public class AudioFeatureMatcher implements ConfigurableComponent, WireEmitter, WireReceiver {
 	
@@ -44,8 +49,14 @@ public class AudioFeatureMatcher implements ConfigurableComponent, WireEmitter,
 	private WireSupport wireSupport;
 	
 	private AudioFeatureMatcherOptions options;
-	private List<Codebook> codebooks;
-	private List<String> features;
+	private volatile ParallelRecordMapper recordMapper;
+	private volatile boolean batchMatching;
+	private volatile int topK = 1;
+	// Replaced as a whole by the loader, a failed load keeps the previous model
+	private volatile CodebookModel model;
+	private ExecutorService loader;
+	private CodebookWatcher watcher;
+	private volatile SchemaMapping schemaMapping;
 
 	public void bindWireHelperService(final WireHelperService wireHelperService) {
         if (isNull(this.wireHelperService)) {
@@ -63,19 +74,52 @@ public class AudioFeatureMatcher implements ConfigurableComponent, WireEmitter,
 		logger.debug("Activating AudioFeatureMatcher...");
 		wireSupport = this.wireHelperService.newWireSupport(this);
         this.extractProperties(properties);
-        this.codebooks = readCodebooksFromConfig();
+        this.loader = Executors.newSingleThreadExecutor(runnable -> {
+        	Thread thread = new Thread(runnable, "AudioFeatureMatcher codebook loader");
+        	thread.setDaemon(true);
+        	return thread;
+        });
+        // The first model is loaded synchronously, so no record arrives before it
+        loadCodebooks(getCodebookPathName(), getSearchIndexConfig());
+        this.configureWatcher();
         logger.debug("Activating AudioFeatureMatcher... Done");
 	}
 	
 	protected synchronized void deactivate() {
 		logger.debug("Deactivating AudioFeatureMatcher...");
+		if (nonNull(this.watcher)) {
+			this.watcher.close();
+			this.watcher = null;
+		}
+		if (nonNull(this.loader)) {
+			this.loader.shutdownNow();
+			this.loader = null;
+		}
+		if (nonNull(this.recordMapper)) {
+			this.recordMapper.shutdown();
+			this.recordMapper = null;
+		}
         logger.debug("Deactivating AudioFeatureMatcher... Done");
 	}
 	
 	public synchronized void updated(final Map<String, Object> properties) {
 		logger.debug("Updating AudioFeatureMatcher...");
+		String codebookPathName = getCodebookPathName();
+		SearchIndexConfig searchIndex = getSearchIndexConfig();
+		Boolean codebookWatch = this.options.getCodebookWatch();
         this.extractProperties(properties);
-        this.codebooks = readCodebooksFromConfig();
+        // Loading may train a pq index, so only options that change the model reload it
+        boolean reload = isNull(this.model) || !getCodebookPathName().equals(codebookPathName)
+        		|| !getSearchIndexConfig().equals(searchIndex);
+        if (reload) {
+        	this.scheduleLoadCodebooks(getCodebookPathName(), getSearchIndexConfig());
+        } else {
+        	logger.debug("Codebook options unchanged, keeping the loaded codebooks");
+        	logBatchMatching(this.model);
+        }
+        if (reload || !Objects.equals(codebookWatch, this.options.getCodebookWatch())) {
+        	this.configureWatcher();
+        }
         logger.debug("Updating AudioFeatureMatcher... Done");
 	}
 
@@ -105,43 +149,13 @@ public class AudioFeatureMatcher implements ConfigurableComponent, WireEmitter,
 		logger.debug("Received wire envelope with {} record(s) from {}", wireEnvelope.getRecords().size(),
 				wireEnvelope.getEmitterPid());
 		
-		final List<WireRecord> audioFeatureMatcherWireRecords = new ArrayList<>();
-		for (WireRecord record : wireEnvelope.getRecords()) {
-			
-			final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
-			Map<String, Double> featureVector = new HashMap<String, Double>();
-			logger.debug("Retrieving {} features from record", this.features.size());
-			for (String propertyName : this.features) {
-				Double propertyValue = (Double) getPropertyValue(record, DataType.DOUBLE, propertyName);
-				requireNonNull(propertyValue, "Missing property:" + propertyName);
-				featureVector.put(propertyName, propertyValue);
-				logger.debug("Added property to vector: {} ({})", propertyName, propertyValue);
-			}
-
-			Integer anomalyClassId = null;
-			String anomalyClassDescription = null;
-			Double distortion = Double.MAX_VALUE;
-			try {
-				for (Codebook codebook : this.codebooks) {
-					Double currentDistortion = codebook.getMinDistortion(featureVector);
-					if (currentDistortion < distortion) {
-						anomalyClassId = codebook.getAnomalyClassId();
-						anomalyClassDescription = codebook.getAnomalyClassDescription();
-						distortion = currentDistortion;
-					}
-				}
-			} catch (KuraRuntimeException e) {
-				logger.error("Could not calculate minimum distortion");
-			}
-			
-			requireNonNull(anomalyClassId, "Could not match feature vector");
-			requireNonNull(anomalyClassDescription, "Could not match feature vector");
-			properties.put(ANOMALY_CLASS_ID, TypedValues.newIntegerValue(anomalyClassId));
-			properties.put(ANOMALY_CLASS_DESCRIPTION, TypedValues.newStringValue(anomalyClassDescription));
-			properties.put(DISTORTION, TypedValues.newDoubleValue(distortion));
-			
-			final WireRecord audioFeatureMatcherWireRecord = new WireRecord(properties);
-			audioFeatureMatcherWireRecords.add(audioFeatureMatcherWireRecord);
+		final List<WireRecord> audioFeatureMatcherWireRecords;
+		CodebookModel model = this.model;
+		// Other indexes visit fewer centroids per record than a block-wise scan of all of them
+		if (this.batchMatching && wireEnvelope.getRecords().size() > 1 && nonNull(model) && model.isBatchSearched()) {
+			audioFeatureMatcherWireRecords = processRecords(model, wireEnvelope.getRecords());
+		} else {
+			audioFeatureMatcherWireRecords = this.recordMapper.map(wireEnvelope.getRecords(), this::processRecord);
 		}
 		Integer numberOfRecords = audioFeatureMatcherWireRecords.size();
 		logger.debug("Emitting {} record(s)...", numberOfRecords);
@@ -151,14 +165,208 @@ public class AudioFeatureMatcher implements ConfigurableComponent, WireEmitter,
 		logger.debug("Emitting...done");
 	}
 
+	private void processRecord(WireRecord record, List<WireRecord> output) {
+		
+		CodebookModel model = this.model;
+		requireNonNull(model, "No codebooks loaded");
+		double[] featureVector = getFeatureVector(record, model.getFeatures());
+
+		CodebookModel.Match[] matches = new CodebookModel.Match[0];
+		try {
+			matches = model.match(featureVector, this.topK);
+		} catch (KuraRuntimeException e) {
+			logger.error("Could not calculate minimum distortion");
+		}
+		addMatchedRecord(record, matches, output);
+	}
+	
+	/**
+	 * Matches the records of one envelope in a single batch, see {@link CodebookModel#match(double[][], int)}.
+	 */
+	private List<WireRecord> processRecords(CodebookModel model, List<WireRecord> records) {
+		double[][] featureVectors = new double[records.size()][];
+		for (int i = 0; i < featureVectors.length; i++) {
+			featureVectors[i] = getFeatureVector(records.get(i), model.getFeatures());
+		}
+		
+		CodebookModel.Match[][] matches = new CodebookModel.Match[featureVectors.length][0];
+		try {
+			matches = model.match(featureVectors, this.topK);
+		} catch (KuraRuntimeException e) {
+			logger.error("Could not calculate minimum distortion");
+		}
+		final List<WireRecord> output = new ArrayList<>(records.size());
+		for (int i = 0; i < matches.length; i++) {
+			addMatchedRecord(records.get(i), matches[i], output);
+		}
+		return output;
+	}
+	
+	/**
+	 * Adds the record with the best match, and for top-k matching the runners-up as
+	 * properties suffixed with their rank from 2, the margin between the distortions of
+	 * the first two classes and the confidence margin / second distortion.
+	 */
+	private void addMatchedRecord(WireRecord record, CodebookModel.Match[] matches, List<WireRecord> output) {
+		final Map<String, TypedValue<?>> properties = new HashMap<String, TypedValue<?>>(record.getProperties());
+		Integer anomalyClassId = null;
+		String anomalyClassDescription = null;
+		Double distortion = Double.MAX_VALUE;
+		if (matches.length > 0) {
+			anomalyClassId = matches[0].getCodebook().getAnomalyClassId();
+			anomalyClassDescription = matches[0].getCodebook().getAnomalyClassDescription();
+			distortion = matches[0].getDistortion();
+		}
+		for (int rank = 2; rank <= matches.length; rank++) {
+			CodebookModel.Match match = matches[rank - 1];
+			properties.put(ANOMALY_CLASS_ID + "_" + rank, TypedValues.newIntegerValue(match.getCodebook().getAnomalyClassId()));
+			properties.put(ANOMALY_CLASS_DESCRIPTION + "_" + rank,
+					TypedValues.newStringValue(match.getCodebook().getAnomalyClassDescription()));
+			properties.put(DISTORTION + "_" + rank, TypedValues.newDoubleValue(match.getDistortion()));
+		}
+		if (matches.length > 1) {
+			double margin = matches[1].getDistortion() - matches[0].getDistortion();
+			double confidence = matches[1].getDistortion() > 0 ? margin / matches[1].getDistortion() : 0.0;
+			properties.put(DISTORTION_MARGIN, TypedValues.newDoubleValue(margin));
+			properties.put(MATCH_CONFIDENCE, TypedValues.newDoubleValue(confidence));
+		}
+		
+		requireNonNull(anomalyClassId, "Could not match feature vector");
+		requireNonNull(anomalyClassDescription, "Could not match feature vector");
+		properties.put(ANOMALY_CLASS_ID, TypedValues.newIntegerValue(anomalyClassId));
+		properties.put(ANOMALY_CLASS_DESCRIPTION, TypedValues.newStringValue(anomalyClassDescription));
+		properties.put(DISTORTION, TypedValues.newDoubleValue(distortion));
+		
+		final WireRecord audioFeatureMatcherWireRecord = new WireRecord(properties);
+		output.add(audioFeatureMatcherWireRecord);
+	}
+	
 	private void extractProperties(final Map<String, Object> properties) {
         requireNonNull(properties, "Properties cannot be null");
         this.options = new AudioFeatureMatcherOptions(properties);
+        this.batchMatching = Boolean.TRUE.equals(this.options.getBatchMatching());
+        this.topK = nonNull(this.options.getTopK()) ? Math.max(this.options.getTopK(), 1) : 1;
+        this.recordMapper = ParallelRecordMapper.reconfigure(this.recordMapper, "AudioFeatureMatcher",
+        		this.options.getParallelism());
     }
 	
+	private String getCodebookPathName() {
+		return this.options.getCodebookPath() + "/" + this.options.getCodebookFilename();
+	}
+	
+	private SearchIndexConfig getSearchIndexConfig() {
+		int pqSubspaces = nonNull(this.options.getPqSubspaces()) ? Math.max(this.options.getPqSubspaces(), 1) : 8;
+		int pqCentroids = nonNull(this.options.getPqCentroids()) ? Math.min(Math.max(this.options.getPqCentroids(), 1), 256) : 256;
+		int pqRerank = nonNull(this.options.getPqRerank()) ? Math.max(this.options.getPqRerank(), 0) : 64;
+		return new SearchIndexConfig(this.options.getSearchIndex(), pqSubspaces, pqCentroids, pqRerank);
+	}
+	
+	private void configureWatcher() {
+		if (nonNull(this.watcher)) {
+			this.watcher.close();
+			this.watcher = null;
+		}
+		if (!Boolean.TRUE.equals(this.options.getCodebookWatch())) {
+			return;
+		}
+		final String codebookPathName = getCodebookPathName();
+		final SearchIndexConfig searchIndex = getSearchIndexConfig();
+		try {
+			// The watcher thread only hands the change to the loader
+			this.watcher = new CodebookWatcher(Paths.get(codebookPathName),
+					() -> scheduleLoadCodebooks(codebookPathName, searchIndex));
+			this.watcher.start();
+		} catch (IOException | RuntimeException e) {
+			logger.error("Could not watch codebook file {}", codebookPathName, e);
+		}
+	}
+	
+	private synchronized void scheduleLoadCodebooks(final String codebookPathName, final SearchIndexConfig searchIndex) {
+		if (isNull(this.loader)) {
+			return;
+		}
+		this.loader.execute(() -> loadCodebooks(codebookPathName, searchIndex));
+	}
+	
+	private void loadCodebooks(String codebookPathName, SearchIndexConfig searchIndex) {
+		CodebookModel model = readCodebooks(codebookPathName, searchIndex);
+		if (nonNull(model)) {
+			this.model = model;
+			logBatchMatching(model);
+		} else if (nonNull(this.model)) {
+			logger.warn("Keeping the previously loaded codebooks");
+		}
+	}
+	
+	private void logBatchMatching(CodebookModel model) {
+		if (this.batchMatching && nonNull(model) && !model.isBatchSearched()) {
+			logger.info("Batch matching only applies to the linear index, searching records one by one with {}",
+					model.getIndexName());
+		}
+	}
+	
+	/**
+	 * Returns the features in codebook order, from the packed feature vector if the record has one.
+	 */
+	private double[] getFeatureVector(WireRecord record, List<String> features) {
+		double[] featureVector = new double[features.size()];
+		byte[] packedVector = (byte[]) getPropertyValue(record, DataType.BYTE_ARRAY, FEATURE_VECTOR);
+		String schema = (String) getPropertyValue(record, DataType.STRING, FEATURE_SCHEMA);
+		if (nonNull(packedVector) && nonNull(schema)) {
+			int[] mapping = getSchemaMapping(schema, features);
+			double[] packedValues = byteArrayToDoubleArray(packedVector);
+			logger.debug("Retrieving {} features from packed vector of {}", features.size(), packedValues.length);
+			for (int i = 0; i < mapping.length; i++) {
+				if (mapping[i] < 0 || mapping[i] >= packedValues.length) {
+					throw new IllegalArgumentException("Feature " + features.get(i)
+							+ " of the codebook is missing from the packed feature vector with schema " + schema);
+				}
+				featureVector[i] = packedValues[mapping[i]];
+			}
+			return featureVector;
+		}
+		logger.debug("Retrieving {} features from record", features.size());
+		for (int i = 0; i < featureVector.length; i++) {
+			String propertyName = features.get(i);
+			Double propertyValue = (Double) getPropertyValue(record, DataType.DOUBLE, propertyName);
+			requireNonNull(propertyValue, "Missing property:" + propertyName);
+			featureVector[i] = propertyValue;
+			logger.debug("Added property to vector: {} ({})", propertyName, propertyValue);
+		}
+		return featureVector;
+	}
+	
+	// Producers emit the same schema for every record, so only the last mapping is kept
+	private int[] getSchemaMapping(String schema, List<String> features) {
+		SchemaMapping schemaMapping = this.schemaMapping;
+		if (nonNull(schemaMapping) && schemaMapping.schema.equals(schema) && schemaMapping.features == features) {
+			return schemaMapping.mapping;
+		}
+		List<String> schemaFeatures = Arrays.asList(schema.split(","));
+		int[] mapping = new int[features.size()];
+		for (int i = 0; i < mapping.length; i++) {
+			mapping[i] = schemaFeatures.indexOf(features.get(i));
+		}
+		logger.debug("Mapped feature schema {} to codebook features", schema);
+		this.schemaMapping = new SchemaMapping(schema, features, mapping);
+		return mapping;
+	}
+	
+	private static final class SchemaMapping {
+		private final String schema;
+		private final List<String> features;
+		private final int[] mapping;
+		
+		private SchemaMapping(String schema, List<String> features, int[] mapping) {
+			this.schema = schema;
+			this.features = features;
+			this.mapping = mapping;
+		}
+	}
+	
 	private Object getPropertyValue(WireRecord record, DataType expectedType, String propertyName) {
 		TypedValue<?> property = record.getProperties().get(propertyName);
-		if (property.getType() == expectedType) {
+		if (nonNull(property) && property.getType() == expectedType) {
 			return property.getValue();
 		} else {
 			return null;
@@ -166,51 +374,20 @@ public class AudioFeatureMatcher implements ConfigurableComponent, WireEmitter,
 	}
 	
 	
-	private List<Codebook> readCodebooksFromConfig() {
+	private CodebookModel readCodebooks(String codebookPathName, SearchIndexConfig searchIndex) {
 		logger.debug("Reading codebooks...");
-		this.features = new ArrayList<String>();
-		List<Codebook> codebooks = new ArrayList<Codebook>();
-		String codebookPathName = this.options.getCodebookPath() + "/" + this.options.getCodebookFilename();
-		FileInputStream fis;
 		try {
-			fis = new FileInputStream(codebookPathName);
-			InputStreamReader reader = new InputStreamReader(fis);
-			JsonObject jsonObject = Json.parse(reader).asObject();
-			requireNonNull(jsonObject, "Could not retrieve main Json object");
-			JsonArray jsonFeatures = jsonObject.get("features").asArray();
-			requireNonNull(jsonFeatures, "Could not retrieve feature array");
-			logger.debug("Codebook configuration specifies {} features", jsonFeatures.size());
-			for (JsonValue jsonFeature : jsonFeatures) {
-				this.features.add(jsonFeature.asString());
-				logger.debug("Added to feature list: {}", jsonFeature.asString());
-			}
-			JsonArray jsonCodebooks = jsonObject.get("codebooks").asArray();
-			for (JsonValue jsonCodebook : jsonCodebooks) {
-				JsonObject anomalyClass = jsonCodebook.asObject().get("anomalyClass").asObject();
-				Integer anomalyClassId = anomalyClass.get("id").asInt();
-				String anomalyClassDescription = anomalyClass.get("description").asString();
-				Codebook codebook = new Codebook(anomalyClassId, anomalyClassDescription, new ArrayList<Map<String, Double>>());
-				JsonArray jsonCentroidVectors = jsonCodebook.asObject().get("centroidVectors").asArray();
-				for (JsonValue jsonCentroidVector : jsonCentroidVectors) {
-					HashMap<String, Double> centroidVector = new HashMap<String, Double>();
-					for (Member element : jsonCentroidVector.asObject()) {
-						String key = element.getName();
-						Double value = element.getValue().asDouble();
-						centroidVector.put(key, value);
-					}
-					codebook.addVector(centroidVector);
-				}
-				codebooks.add(codebook);
-				logger.debug("Added codebook: {}", codebook.toString());
-			}
-			fis.close();
+			CodebookModel model = CodebookFiles.read(Paths.get(codebookPathName), searchIndex);
+			logger.info("Loaded {} centroid(s) of {} codebook(s) with {} feature(s), searching them with {}",
+					model.getCentroidCount(), model.getCodebooks().size(), model.getFeatures().size(),
+					model.getIndexName());
 			logger.debug("Reading codebooks...Done");
-			return codebooks;
-		} catch (FileNotFoundException e) {
+			return model;
+		} catch (NoSuchFileException e) {
 			logger.error("Could not find codebook file {}", codebookPathName);
 			return null;
 		} catch (IOException e) {
-			logger.error("Could not close codebook file {}", codebookPathName);
+			logger.error("Could not read codebook file {}", codebookPathName, e);
 			return null;
 		} catch (Exception e) {
 			logger.error("Could not parse codebook file {}", codebookPathName);
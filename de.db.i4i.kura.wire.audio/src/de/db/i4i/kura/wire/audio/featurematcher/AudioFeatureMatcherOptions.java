@@ -9,6 +9,14 @@ public class AudioFeatureMatcherOptions {
 	
 	private static final String CODEBOOK_PATH = "codebook.path";
 	private static final String CODEBOOK_FILENAME = "codebook.filename";
+	private static final String PARALLELISM = "parallelism";
+	private static final String SEARCH_INDEX = "search.index";
+	private static final String CODEBOOK_WATCH = "codebook.watch";
+	private static final String BATCH_MATCHING = "batch.matching";
+	private static final String TOP_K = "top.k";
+	private static final String PQ_SUBSPACES = "pq.subspaces";
+	private static final String PQ_CENTROIDS = "pq.centroids";
+	private static final String PQ_RERANK = "pq.rerank";
 	
 	private final Map<String, Object> properties;
 	
@@ -34,4 +42,76 @@ public class AudioFeatureMatcherOptions {
 		}
 		return codebookFilename;
 	}
+	
+	Integer getParallelism() {
+		Integer parallelism = null;
+		final Object p = this.properties.get(PARALLELISM);
+		if (nonNull(p) && (p instanceof Integer)) {
+			parallelism = (Integer) p;
+		}
+		return parallelism;
+	}
+	
+	String getSearchIndex() {
+		String searchIndex = null;
+		final Object si = this.properties.get(SEARCH_INDEX);
+		if (nonNull(si) && (si instanceof String)) {
+			searchIndex = (String) si;
+		}
+		return searchIndex;
+	}
+	
+	Boolean getCodebookWatch() {
+		Boolean codebookWatch = null;
+		final Object cw = this.properties.get(CODEBOOK_WATCH);
+		if (nonNull(cw) && (cw instanceof Boolean)) {
+			codebookWatch = (Boolean) cw;
+		}
+		return codebookWatch;
+	}
+	
+	Boolean getBatchMatching() {
+		Boolean batchMatching = null;
+		final Object bm = this.properties.get(BATCH_MATCHING);
+		if (nonNull(bm) && (bm instanceof Boolean)) {
+			batchMatching = (Boolean) bm;
+		}
+		return batchMatching;
+	}
+	
+	Integer getTopK() {
+		Integer topK = null;
+		final Object tk = this.properties.get(TOP_K);
+		if (nonNull(tk) && (tk instanceof Integer)) {
+			topK = (Integer) tk;
+		}
+		return topK;
+	}
+	
+	Integer getPqSubspaces() {
+		Integer pqSubspaces = null;
+		final Object pqs = this.properties.get(PQ_SUBSPACES);
+		if (nonNull(pqs) && (pqs instanceof Integer)) {
+			pqSubspaces = (Integer) pqs;
+		}
+		return pqSubspaces;
+	}
+	
+	Integer getPqCentroids() {
+		Integer pqCentroids = null;
+		final Object pqc = this.properties.get(PQ_CENTROIDS);
+		if (nonNull(pqc) && (pqc instanceof Integer)) {
+			pqCentroids = (Integer) pqc;
+		}
+		return pqCentroids;
+	}
+	
+	Integer getPqRerank() {
+		Integer pqRerank = null;
+		final Object pqr = this.properties.get(PQ_RERANK);
+		if (nonNull(pqr) && (pqr instanceof Integer)) {
+			pqRerank = (Integer) pqr;
+		}
+		return pqRerank;
+	}
 }
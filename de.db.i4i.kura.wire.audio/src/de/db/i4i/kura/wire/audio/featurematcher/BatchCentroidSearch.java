@@ -0,0 +1,96 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+/**
+ * Finds the nearest centroids of many feature vectors at once.
+ *
+ * Squared distances are expanded to ||x||^2 + ||c||^2 - 2 x.c with precomputed
+ * centroid norms, so each pair costs one dot product. Centroids are copied in tiles of
+ * CENTROID_TILE rows into a heap buffer that stays in the L1 cache while all vectors
+ * are scored against it. The expansion loses precision when x and c are close, so the
+ * distances of the resulting centroids are computed again directly.
+ */
+final class BatchCentroidSearch {
+
+	private static final int CENTROID_TILE = 64;
+
+	private final CentroidMatrix centroids;
+	private final double[] norms;
+
+	BatchCentroidSearch(CentroidMatrix centroids) {
+		this.centroids = centroids;
+		int dimension = centroids.getDimension();
+		this.norms = new double[centroids.getRows()];
+		for (int row = 0; row < this.norms.length; row++) {
+			double norm = 0.0;
+			for (int column = 0; column < dimension; column++) {
+				double value = centroids.get(row, column);
+				norm += value * value;
+			}
+			this.norms[row] = norm;
+		}
+	}
+
+	/**
+	 * Offers every centroid to the {@link CentroidIndex.Nearest} of every feature vector.
+	 */
+	void findNearest(double[][] featureVectors, CentroidIndex.Nearest[] nearest) {
+		final int dimension = this.centroids.getDimension();
+		final int count = featureVectors.length;
+		double[] vectorNorms = new double[count];
+		for (int v = 0; v < count; v++) {
+			double norm = 0.0;
+			for (double value : featureVectors[v]) {
+				norm += value * value;
+			}
+			vectorNorms[v] = norm;
+		}
+		double[] tile = new double[CENTROID_TILE * dimension];
+		for (int tileStart = 0; tileStart < this.norms.length; tileStart += CENTROID_TILE) {
+			int tileRows = Math.min(CENTROID_TILE, this.norms.length - tileStart);
+			for (int r = 0; r < tileRows; r++) {
+				for (int column = 0; column < dimension; column++) {
+					tile[r * dimension + column] = this.centroids.get(tileStart + r, column);
+				}
+			}
+			int v = 0;
+			// Four vectors share every centroid value loaded from the tile
+			for (; v + 4 <= count; v += 4) {
+				final double[] x0 = featureVectors[v];
+				final double[] x1 = featureVectors[v + 1];
+				final double[] x2 = featureVectors[v + 2];
+				final double[] x3 = featureVectors[v + 3];
+				for (int r = 0, offset = 0; r < tileRows; r++, offset += dimension) {
+					double dot0 = 0.0;
+					double dot1 = 0.0;
+					double dot2 = 0.0;
+					double dot3 = 0.0;
+					for (int column = 0; column < dimension; column++) {
+						double c = tile[offset + column];
+						dot0 += x0[column] * c;
+						dot1 += x1[column] * c;
+						dot2 += x2[column] * c;
+						dot3 += x3[column] * c;
+					}
+					double norm = this.norms[tileStart + r];
+					nearest[v].offer(tileStart + r, vectorNorms[v] + norm - 2.0 * dot0);
+					nearest[v + 1].offer(tileStart + r, vectorNorms[v + 1] + norm - 2.0 * dot1);
+					nearest[v + 2].offer(tileStart + r, vectorNorms[v + 2] + norm - 2.0 * dot2);
+					nearest[v + 3].offer(tileStart + r, vectorNorms[v + 3] + norm - 2.0 * dot3);
+				}
+			}
+			for (; v < count; v++) {
+				final double[] x = featureVectors[v];
+				for (int r = 0, offset = 0; r < tileRows; r++, offset += dimension) {
+					double dot = 0.0;
+					for (int column = 0; column < dimension; column++) {
+						dot += x[column] * tile[offset + column];
+					}
+					nearest[v].offer(tileStart + r, vectorNorms[v] + this.norms[tileStart + r] - 2.0 * dot);
+				}
+			}
+		}
+		for (int v = 0; v < count; v++) {
+			nearest[v].refine(this.centroids, featureVectors[v]);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+/**
+ * Finds the row of a {@link CentroidMatrix} nearest to a feature vector.
+ */
+interface CentroidIndex {
+
+	String LINEAR = "linear";
+	String KD_TREE = "kdtree";
+	String VP_TREE = "vptree";
+	String PQ = "pq";
+	String AUTO = "auto";
+
+	/**
+	 * Offers nearest every centroid that may be closer than its {@link Nearest#bound()}.
+	 */
+	void findNearest(double[] featureVector, Nearest nearest);
+
+	/**
+	 * Builds the index of the given type over the centroid matrix. auto scans small
+	 * matrices linearly, k-d trees prune well up to about 8 dimensions, vantage-point
+	 * trees only rely on the triangle inequality and degrade more gracefully above.
+	 * The approximate pq index is never chosen automatically.
+	 */
+	static CentroidIndex build(SearchIndexConfig config, CentroidMatrix centroids) {
+		String type = config.getType();
+		int rows = centroids.getRows();
+		int dimension = centroids.getDimension();
+		if (AUTO.equals(type)) {
+			if (rows < 256) {
+				type = LINEAR;
+			} else if (dimension <= 8) {
+				type = KD_TREE;
+			} else {
+				type = VP_TREE;
+			}
+		}
+		if (KD_TREE.equals(type)) {
+			return new KdTreeCentroidIndex(centroids);
+		} else if (VP_TREE.equals(type)) {
+			return new VpTreeCentroidIndex(centroids);
+		} else if (PQ.equals(type)) {
+			return new PqCentroidIndex(centroids, config.getPqSubspaces(), config.getPqCentroids(),
+					config.getPqRerank());
+		}
+		return new LinearCentroidIndex(centroids);
+	}
+
+	/**
+	 * The best row found so far and its squared distance.
+	 */
+	class Nearest {
+		int row = -1;
+		double distance2 = Double.POSITIVE_INFINITY;
+
+		void offer(int row, double distance2) {
+			if (distance2 < this.distance2) {
+				this.row = row;
+				this.distance2 = distance2;
+			}
+		}
+
+		/**
+		 * Returns the squared distance a centroid must be below to change the result.
+		 */
+		double bound() {
+			return this.distance2;
+		}
+
+		/**
+		 * Computes the squared distances of the result rows again directly, after they
+		 * were found with approximate distances.
+		 */
+		void refine(CentroidMatrix centroids, double[] featureVector) {
+			if (this.row >= 0) {
+				this.distance2 = centroids.distance2(this.row, featureVector, Double.POSITIVE_INFINITY);
+			}
+		}
+
+		int size() {
+			return this.row >= 0 ? 1 : 0;
+		}
+
+		int getRow(int rank) {
+			return this.row;
+		}
+
+		double getDistance2(int rank) {
+			return this.distance2;
+		}
+	}
+}
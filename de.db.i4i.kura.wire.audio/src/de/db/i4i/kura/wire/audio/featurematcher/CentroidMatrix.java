@@ -0,0 +1,19 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+/**
+ * A row-major matrix of centroids, one row per centroid and one column per feature.
+ */
+interface CentroidMatrix {
+
+	int getRows();
+
+	int getDimension();
+
+	double get(int row, int column);
+
+	/**
+	 * Returns the squared distance of the row to the feature vector, or a partial sum
+	 * of at least bound once it exceeds bound.
+	 */
+	double distance2(int row, double[] featureVector, double bound);
+}
@@ -0,0 +1,246 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.eclipsesource.json.Json;
+import com.eclipsesource.json.JsonArray;
+import com.eclipsesource.json.JsonObject;
+import com.eclipsesource.json.JsonObject.Member;
+import com.eclipsesource.json.JsonValue;
+
+/**
+ * Reads JSON and binary codebook files, and converts JSON codebooks to the binary format.
+ *
+ * A binary codebook is big-endian and starts with a header:
+ * <pre>
+ * "I4CB"                       magic
+ * int version                  1
+ * int valueSize                4 for float32, 8 for float64 centroid values
+ * int dimension                number of features
+ * int codebookCount
+ * int centroidCount
+ * dimension x string           feature names
+ * codebookCount x (int id, string description, int centroidCount)
+ * </pre>
+ * Strings are an int byte length followed by UTF-8 bytes. After zero padding to a
+ * multiple of 8 bytes follows the centroid matrix, centroidCount rows of dimension
+ * values, grouped by codebook in header order. The matrix is memory-mapped and read in
+ * place. A mapped file that is truncated or rewritten crashes the reader, so a binary
+ * codebook in use must only be replaced by renaming a new file over it, the way
+ * {@link #writeBinary} does. The replaced file stays mapped until the model is released.
+ */
+public final class CodebookFiles {
+
+	private static final byte[] MAGIC = { 'I', '4', 'C', 'B' };
+	private static final int VERSION = 1;
+
+	private CodebookFiles() {
+	}
+
+	/**
+	 * Reads a binary codebook if the file starts with the binary magic, a JSON codebook otherwise.
+	 */
+	public static CodebookModel read(Path file, SearchIndexConfig searchIndex) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		try (InputStream in = Files.newInputStream(file)) {
+			int length = in.read(magic);
+			if (length < MAGIC.length) {
+				magic = null;
+			}
+		}
+		if (Arrays.equals(magic, MAGIC)) {
+			return readBinary(file, searchIndex);
+		}
+		return readJson(file, searchIndex);
+	}
+
+	public static CodebookModel readJson(Path file, SearchIndexConfig searchIndex) throws IOException {
+		List<String> features = new ArrayList<String>();
+		List<Codebook> codebooks = new ArrayList<Codebook>();
+		try (InputStreamReader reader = new InputStreamReader(Files.newInputStream(file))) {
+			JsonObject jsonObject = Json.parse(reader).asObject();
+			requireNonNull(jsonObject, "Could not retrieve main Json object");
+			JsonArray jsonFeatures = jsonObject.get("features").asArray();
+			requireNonNull(jsonFeatures, "Could not retrieve feature array");
+			for (JsonValue jsonFeature : jsonFeatures) {
+				features.add(jsonFeature.asString());
+			}
+			JsonArray jsonCodebooks = jsonObject.get("codebooks").asArray();
+			for (JsonValue jsonCodebook : jsonCodebooks) {
+				JsonObject anomalyClass = jsonCodebook.asObject().get("anomalyClass").asObject();
+				Integer anomalyClassId = anomalyClass.get("id").asInt();
+				String anomalyClassDescription = anomalyClass.get("description").asString();
+				Codebook codebook = new Codebook(anomalyClassId, anomalyClassDescription, new ArrayList<Map<String, Double>>());
+				JsonArray jsonCentroidVectors = jsonCodebook.asObject().get("centroidVectors").asArray();
+				for (JsonValue jsonCentroidVector : jsonCentroidVectors) {
+					HashMap<String, Double> centroidVector = new HashMap<String, Double>();
+					for (Member element : jsonCentroidVector.asObject()) {
+						centroidVector.put(element.getName(), element.getValue().asDouble());
+					}
+					codebook.addVector(centroidVector);
+				}
+				codebooks.add(codebook);
+			}
+		}
+		return CodebookModel.compile(features, codebooks, searchIndex);
+	}
+
+	public static CodebookModel readBinary(Path file, SearchIndexConfig searchIndex) throws IOException {
+		ByteBuffer buffer = map(file);
+		byte[] magic = new byte[MAGIC.length];
+		buffer.get(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("Not a binary codebook: " + file);
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary codebook version " + version);
+		}
+		int valueSize = buffer.getInt();
+		if (valueSize != 4 && valueSize != 8) {
+			throw new IOException("Unsupported centroid value size " + valueSize);
+		}
+		int dimension = buffer.getInt();
+		int codebookCount = buffer.getInt();
+		int centroidCount = buffer.getInt();
+		List<String> features = new ArrayList<>(dimension);
+		for (int i = 0; i < dimension; i++) {
+			features.add(getString(buffer));
+		}
+		List<Codebook> codebooks = new ArrayList<>(codebookCount);
+		int[] centroidCodebooks = new int[centroidCount];
+		int row = 0;
+		for (int c = 0; c < codebookCount; c++) {
+			int anomalyClassId = buffer.getInt();
+			String anomalyClassDescription = getString(buffer);
+			int rows = buffer.getInt();
+			if (rows < 0 || row + rows > centroidCount) {
+				throw new IOException("Codebook " + anomalyClassId + " exceeds the centroid count");
+			}
+			// The centroids stay in the mapped matrix
+			codebooks.add(new Codebook(anomalyClassId, anomalyClassDescription, new ArrayList<Map<String, Double>>()));
+			Arrays.fill(centroidCodebooks, row, row + rows, c);
+			row += rows;
+		}
+		if (row != centroidCount) {
+			throw new IOException("Codebooks hold " + row + " of " + centroidCount + " centroids");
+		}
+		int matrixOffset = align(buffer.position());
+		long matrixSize = (long) centroidCount * dimension * valueSize;
+		if (matrixOffset + matrixSize > buffer.limit()) {
+			throw new IOException("Binary codebook is truncated: " + file);
+		}
+		// Called through Buffer and ByteBuffer, the covariant overrides of later JDKs do not exist in Java 8
+		((Buffer) buffer).position(matrixOffset);
+		ByteBuffer matrix = buffer.slice();
+		((Buffer) matrix).limit((int) matrixSize);
+		return new CodebookModel(features, codebooks,
+				new MappedCentroidMatrix(matrix, valueSize == 4, centroidCount, dimension), centroidCodebooks,
+				searchIndex);
+	}
+
+	/**
+	 * Maps the whole file read-only. The mapping stays valid after the channel is closed,
+	 * and after the file was replaced by a rename.
+	 */
+	private static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Writes the model as binary codebook, to a temporary file that then replaces the target.
+	 */
+	public static void writeBinary(CodebookModel model, Path file, boolean float32) throws IOException {
+		CentroidMatrix centroids = model.getCentroids();
+		List<Codebook> codebooks = model.getCodebooks();
+		int[] codebookRows = new int[codebooks.size()];
+		for (int row = 0; row < centroids.getRows(); row++) {
+			codebookRows[model.getCentroidCodebook(row)]++;
+		}
+		Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(float32 ? 4 : 8);
+			out.writeInt(centroids.getDimension());
+			out.writeInt(codebooks.size());
+			out.writeInt(centroids.getRows());
+			for (String feature : model.getFeatures()) {
+				putString(out, feature);
+			}
+			for (int c = 0; c < codebooks.size(); c++) {
+				out.writeInt(codebooks.get(c).getAnomalyClassId());
+				putString(out, codebooks.get(c).getAnomalyClassDescription());
+				out.writeInt(codebookRows[c]);
+			}
+			for (int i = out.size(); i < align(out.size()); i++) {
+				out.writeByte(0);
+			}
+			for (int row = 0; row < centroids.getRows(); row++) {
+				for (int column = 0; column < centroids.getDimension(); column++) {
+					if (float32) {
+						out.writeFloat((float) centroids.get(row, column));
+					} else {
+						out.writeDouble(centroids.get(row, column));
+					}
+				}
+			}
+		}
+		Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int align(int position) {
+		return (position + 7) & ~7;
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void putString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Converts a JSON codebook to the binary format.
+	 *
+	 * Usage: CodebookFiles &lt;codebook.json&gt; &lt;codebook.bin&gt; [float32|float64]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: CodebookFiles <codebook.json> <codebook.bin> [float32|float64]");
+			System.exit(1);
+		}
+		boolean float32 = args.length == 3 && "float32".equals(args[2]);
+		CodebookModel model = readJson(Paths.get(args[0]), SearchIndexConfig.of(CentroidIndex.LINEAR));
+		writeBinary(model, Paths.get(args[1]), float32);
+		System.out.println("Wrote " + model.getCentroidCount() + " centroid(s) of " + model.getCodebooks().size()
+				+ " codebook(s) with " + model.getFeatures().size() + " feature(s) as " + (float32 ? "float32" : "float64"));
+	}
+}
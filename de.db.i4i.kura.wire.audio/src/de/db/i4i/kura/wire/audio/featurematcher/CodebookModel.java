@@ -0,0 +1,198 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.kura.KuraErrorCode;
+import org.eclipse.kura.KuraRuntimeException;
+
+/**
+ * The centroids of all codebooks in one row-major {@link CentroidMatrix}.
+ *
+ * The feature order is fixed when the model is compiled or loaded, so matching a
+ * vector is a loop over primitive values. The squared distance to a centroid is abandoned as soon
+ * as it exceeds the best distance found so far. A {@link CentroidIndex} built with the
+ * model can avoid visiting most centroids. Models are immutable and can be shared
+ * between threads.
+ */
+public final class CodebookModel {
+
+	private final List<String> features;
+	private final List<Codebook> codebooks;
+	private final int dimension;
+	private final CentroidMatrix centroids;
+	// Index into codebooks for every centroid row
+	private final int[] centroidCodebooks;
+	private final CentroidIndex index;
+	// Created on the first batch, racing threads build equal instances
+	private volatile BatchCentroidSearch batchSearch;
+
+	CodebookModel(List<String> features, List<Codebook> codebooks, CentroidMatrix centroids,
+			int[] centroidCodebooks, SearchIndexConfig searchIndex) {
+		this.features = Collections.unmodifiableList(features);
+		this.codebooks = Collections.unmodifiableList(codebooks);
+		this.dimension = features.size();
+		this.centroids = centroids;
+		this.centroidCodebooks = centroidCodebooks;
+		this.index = CentroidIndex.build(searchIndex, centroids);
+	}
+
+	/**
+	 * Compiles the centroid vectors of the codebooks in the given feature order.
+	 *
+	 * @param searchIndex the {@link CentroidIndex} to build
+	 * @throws KuraRuntimeException if a centroid vector does not have exactly these features
+	 */
+	public static CodebookModel compile(List<String> features, List<Codebook> codebooks, SearchIndexConfig searchIndex)
+			throws KuraRuntimeException {
+		int rows = 0;
+		for (Codebook codebook : codebooks) {
+			rows += codebook.getCentroidVectors().size();
+		}
+		int dimension = features.size();
+		double[] centroids = new double[rows * dimension];
+		int[] centroidCodebooks = new int[rows];
+		int row = 0;
+		for (int c = 0; c < codebooks.size(); c++) {
+			for (Map<String, Double> centroidVector : codebooks.get(c).getCentroidVectors()) {
+				if (centroidVector.size() != dimension) {
+					throw new KuraRuntimeException(KuraErrorCode.INVALID_PARAMETER);
+				}
+				for (int i = 0; i < dimension; i++) {
+					Double value = centroidVector.get(features.get(i));
+					if (value == null) {
+						throw new KuraRuntimeException(KuraErrorCode.INVALID_PARAMETER);
+					}
+					centroids[row * dimension + i] = value;
+				}
+				centroidCodebooks[row] = c;
+				row++;
+			}
+		}
+		return new CodebookModel(features, codebooks, new ArrayCentroidMatrix(centroids, rows, dimension),
+				centroidCodebooks, searchIndex);
+	}
+
+	public List<String> getFeatures() {
+		return this.features;
+	}
+
+	public List<Codebook> getCodebooks() {
+		return this.codebooks;
+	}
+
+	public String getIndexName() {
+		return this.index.getClass().getSimpleName();
+	}
+
+	CentroidMatrix getCentroids() {
+		return this.centroids;
+	}
+
+	/**
+	 * Returns the index into {@link #getCodebooks()} of the centroid row.
+	 */
+	int getCentroidCodebook(int row) {
+		return this.centroidCodebooks[row];
+	}
+
+	public int getCentroidCount() {
+		return this.centroidCodebooks.length;
+	}
+
+	/**
+	 * Returns the codebook of the centroid nearest to the feature vector, which must be in feature order.
+	 *
+	 * @return null if the model has no centroids
+	 */
+	public Match match(double[] featureVector) throws KuraRuntimeException {
+		Match[] matches = match(featureVector, 1);
+		return matches.length > 0 ? matches[0] : null;
+	}
+
+	/**
+	 * Returns the k codebooks with the nearest centroids, nearest first. Each codebook
+	 * appears once, with the distortion of its nearest centroid.
+	 */
+	public Match[] match(double[] featureVector, int k) throws KuraRuntimeException {
+		if (featureVector.length != this.dimension) {
+			throw new KuraRuntimeException(KuraErrorCode.INVALID_PARAMETER);
+		}
+		CentroidIndex.Nearest nearest = newNearest(k);
+		this.index.findNearest(featureVector, nearest);
+		return toMatches(nearest);
+	}
+
+	/**
+	 * Returns whether {@link #match(double[][], int)} evaluates the vectors block-wise, which
+	 * it only does when the index would compare every centroid anyway.
+	 */
+	public boolean isBatchSearched() {
+		return this.index instanceof LinearCentroidIndex;
+	}
+
+	/**
+	 * Like {@link #match(double[], int)} for many feature vectors. Evaluated block-wise by a
+	 * {@link BatchCentroidSearch}, which pays off for several vectors, if the model is
+	 * {@link #isBatchSearched()}. Otherwise each vector is searched in the index, which
+	 * visits fewer centroids than a full scan.
+	 */
+	public Match[][] match(double[][] featureVectors, int k) throws KuraRuntimeException {
+		CentroidIndex.Nearest[] nearest = new CentroidIndex.Nearest[featureVectors.length];
+		for (int v = 0; v < featureVectors.length; v++) {
+			if (featureVectors[v].length != this.dimension) {
+				throw new KuraRuntimeException(KuraErrorCode.INVALID_PARAMETER);
+			}
+			nearest[v] = newNearest(k);
+		}
+		if (isBatchSearched()) {
+			BatchCentroidSearch batchSearch = this.batchSearch;
+			if (batchSearch == null) {
+				batchSearch = new BatchCentroidSearch(this.centroids);
+				this.batchSearch = batchSearch;
+			}
+			batchSearch.findNearest(featureVectors, nearest);
+		} else {
+			for (int v = 0; v < featureVectors.length; v++) {
+				this.index.findNearest(featureVectors[v], nearest[v]);
+			}
+		}
+		Match[][] matches = new Match[featureVectors.length][];
+		for (int v = 0; v < matches.length; v++) {
+			matches[v] = toMatches(nearest[v]);
+		}
+		return matches;
+	}
+
+	private CentroidIndex.Nearest newNearest(int k) {
+		return k > 1 ? new TopClasses(k, this.centroidCodebooks) : new CentroidIndex.Nearest();
+	}
+
+	private Match[] toMatches(CentroidIndex.Nearest nearest) {
+		Match[] matches = new Match[nearest.size()];
+		for (int rank = 0; rank < matches.length; rank++) {
+			matches[rank] = new Match(this.codebooks.get(this.centroidCodebooks[nearest.getRow(rank)]),
+					Math.sqrt(nearest.getDistance2(rank)));
+		}
+		return matches;
+	}
+
+	public static final class Match {
+		private final Codebook codebook;
+		private final double distortion;
+
+		private Match(Codebook codebook, double distortion) {
+			this.codebook = codebook;
+			this.distortion = distortion;
+		}
+
+		public Codebook getCodebook() {
+			return this.codebook;
+		}
+
+		public double getDistortion() {
+			return this.distortion;
+		}
+	}
+}
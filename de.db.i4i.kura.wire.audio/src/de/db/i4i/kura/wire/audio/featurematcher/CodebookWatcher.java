@@ -0,0 +1,94 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the directory of a codebook file and runs a callback on its own thread when the file changes.
+ *
+ * A file is often written in several steps, so the callback only runs once no further
+ * event arrived for SETTLE_TIME milliseconds. Replacing the file by a rename is
+ * reported as a create event and handled the same way.
+ */
+final class CodebookWatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(CodebookWatcher.class);
+
+	private static final long SETTLE_TIME = 500;
+
+	private final Path file;
+	private final Runnable onChange;
+	private final WatchService watchService;
+	private final Thread thread;
+
+	CodebookWatcher(Path file, Runnable onChange) throws IOException {
+		this.file = file.toAbsolutePath();
+		this.onChange = onChange;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.file.getParent().register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY);
+		this.thread = new Thread(this::watch, "AudioFeatureMatcher codebook watcher");
+		this.thread.setDaemon(true);
+	}
+
+	void start() {
+		logger.info("Watching codebook file {}", this.file);
+		this.thread.start();
+	}
+
+	void close() {
+		try {
+			this.watchService.close();
+		} catch (IOException e) {
+			logger.debug("Could not close watch service", e);
+		}
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				boolean changed = handleEvents(this.watchService.take());
+				while (changed) {
+					WatchKey key = this.watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+					if (key == null) {
+						break;
+					}
+					handleEvents(key);
+				}
+				if (changed) {
+					logger.info("Codebook file {} changed", this.file);
+					try {
+						this.onChange.run();
+					} catch (RuntimeException e) {
+						logger.error("Could not handle codebook change", e);
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			logger.debug("Stopped watching codebook file {}", this.file);
+		}
+	}
+
+	private boolean handleEvents(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			Object context = event.context();
+			if (context instanceof Path && this.file.getFileName().equals(context)) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+}
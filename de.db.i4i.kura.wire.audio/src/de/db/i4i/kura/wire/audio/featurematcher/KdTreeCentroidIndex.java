@@ -0,0 +1,118 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+/**
+ * An implicit k-d tree over a permutation of the centroid rows.
+ *
+ * The subtree of the range [lo, hi) is split at its middle point along the dimension
+ * of largest spread, so the tree needs no node objects, only the split dimension of
+ * every middle point. Ranges of up to LEAF_SIZE points are scanned linearly.
+ */
+final class KdTreeCentroidIndex implements CentroidIndex {
+
+	private static final int LEAF_SIZE = 8;
+
+	private final CentroidMatrix centroids;
+	private final int dimension;
+	// The centroid row of every tree position
+	private final int[] rows;
+	private final int[] splitDimensions;
+
+	KdTreeCentroidIndex(CentroidMatrix centroids) {
+		this.centroids = centroids;
+		this.dimension = centroids.getDimension();
+		int rows = centroids.getRows();
+		int[] order = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			order[i] = i;
+		}
+		this.splitDimensions = new int[rows];
+		build(centroids, order, 0, rows);
+		this.rows = order;
+	}
+
+	private void build(CentroidMatrix centroids, int[] order, int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			return;
+		}
+		int splitDimension = 0;
+		double maxSpread = -1.0;
+		for (int d = 0; d < this.dimension; d++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = lo; i < hi; i++) {
+				double v = centroids.get(order[i], d);
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			if (max - min > maxSpread) {
+				maxSpread = max - min;
+				splitDimension = d;
+			}
+		}
+		int mid = (lo + hi) >>> 1;
+		select(centroids, order, lo, hi - 1, mid, splitDimension);
+		this.splitDimensions[mid] = splitDimension;
+		build(centroids, order, lo, mid);
+		build(centroids, order, mid + 1, hi);
+	}
+
+	// Quickselect, afterwards order[k] holds the k-th smallest coordinate of [left, right]
+	private void select(CentroidMatrix centroids, int[] order, int left, int right, int k, int d) {
+		while (left < right) {
+			double pivot = centroids.get(order[(left + right) >>> 1], d);
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (centroids.get(order[i], d) < pivot) {
+					i++;
+				}
+				while (centroids.get(order[j], d) > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void findNearest(double[] featureVector, Nearest nearest) {
+		search(featureVector, nearest, 0, this.rows.length);
+	}
+
+	private void search(double[] featureVector, Nearest nearest, int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi; i++) {
+				nearest.offer(this.rows[i], this.centroids.distance2(this.rows[i], featureVector, nearest.bound()));
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int splitDimension = this.splitDimensions[mid];
+		nearest.offer(this.rows[mid], this.centroids.distance2(this.rows[mid], featureVector, nearest.bound()));
+		double diff = featureVector[splitDimension] - this.centroids.get(this.rows[mid], splitDimension);
+		if (diff < 0) {
+			search(featureVector, nearest, lo, mid);
+			if (diff * diff < nearest.bound()) {
+				search(featureVector, nearest, mid + 1, hi);
+			}
+		} else {
+			search(featureVector, nearest, mid + 1, hi);
+			if (diff * diff < nearest.bound()) {
+				search(featureVector, nearest, lo, mid);
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+/**
+ * Scans all centroids, abandoning each distance once it exceeds the best so far.
+ */
+final class LinearCentroidIndex implements CentroidIndex {
+
+	private final CentroidMatrix centroids;
+
+	LinearCentroidIndex(CentroidMatrix centroids) {
+		this.centroids = centroids;
+	}
+
+	@Override
+	public void findNearest(double[] featureVector, Nearest nearest) {
+		for (int row = 0; row < this.centroids.getRows(); row++) {
+			nearest.offer(row, this.centroids.distance2(row, featureVector, nearest.bound()));
+		}
+	}
+}
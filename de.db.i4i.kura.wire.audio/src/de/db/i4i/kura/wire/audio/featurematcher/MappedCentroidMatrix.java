@@ -0,0 +1,66 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A centroid matrix of big-endian float32 or float64 values in a memory-mapped binary codebook.
+ *
+ * The values stay off the heap in the page cache and are read with absolute gets,
+ * so loading a codebook does not copy them.
+ */
+final class MappedCentroidMatrix implements CentroidMatrix {
+
+	private final ByteBuffer buffer;
+	private final boolean float32;
+	private final int rows;
+	private final int dimension;
+
+	MappedCentroidMatrix(ByteBuffer buffer, boolean float32, int rows, int dimension) {
+		this.buffer = buffer;
+		this.float32 = float32;
+		this.rows = rows;
+		this.dimension = dimension;
+	}
+
+	@Override
+	public int getRows() {
+		return this.rows;
+	}
+
+	@Override
+	public int getDimension() {
+		return this.dimension;
+	}
+
+	@Override
+	public double get(int row, int column) {
+		int index = row * this.dimension + column;
+		return this.float32 ? this.buffer.getFloat(index << 2) : this.buffer.getDouble(index << 3);
+	}
+
+	@Override
+	public double distance2(int row, double[] featureVector, double bound) {
+		final ByteBuffer buffer = this.buffer;
+		double distance2 = 0.0;
+		if (this.float32) {
+			int position = (row * this.dimension) << 2;
+			for (int i = 0; i < featureVector.length; i++, position += 4) {
+				double d = buffer.getFloat(position) - featureVector[i];
+				distance2 += d * d;
+				if (distance2 >= bound) {
+					break;
+				}
+			}
+		} else {
+			int position = (row * this.dimension) << 3;
+			for (int i = 0; i < featureVector.length; i++, position += 8) {
+				double d = buffer.getDouble(position) - featureVector[i];
+				distance2 += d * d;
+				if (distance2 >= bound) {
+					break;
+				}
+			}
+		}
+		return distance2;
+	}
+}
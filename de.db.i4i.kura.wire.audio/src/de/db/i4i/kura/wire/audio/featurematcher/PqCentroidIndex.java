@@ -0,0 +1,216 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An approximate index that product-quantizes the centroids.
+ *
+ * The features are split into contiguous subspaces, and a k-means codebook of up to 256
+ * subcentroids is trained per subspace when the index is built. Every centroid is stored
+ * as one byte per subspace, the index of its nearest subcentroid. A query first fills a
+ * lookup table with its squared distance to every subcentroid, after which the
+ * approximate distance to a centroid is the sum of one table entry per subspace. The
+ * rerank nearest candidates by approximate distance are then compared exactly. Without
+ * reranking the approximate distances are reported, more candidates raise the recall at
+ * the cost of exact distance evaluations.
+ */
+final class PqCentroidIndex implements CentroidIndex {
+
+	private static final int TRAINING_ITERATIONS = 10;
+	// k-means is trained on a sample of at most this many rows per subcentroid
+	private static final int TRAINING_ROWS_PER_CENTROID = 64;
+	private static final long TRAINING_SEED = 42;
+
+	private final CentroidMatrix centroids;
+	private final int rows;
+	private final int subspaces;
+	private final int subcentroidCount;
+	private final int rerank;
+	// Subspace m covers the features from subspaceStarts[m] to subspaceStarts[m + 1]
+	private final int[] subspaceStarts;
+	// Row-major subcentroids of every subspace
+	private final double[][] subcentroids;
+	// One subcentroid index per row and subspace, subspace-major so a query streams them
+	private final byte[] codes;
+
+	PqCentroidIndex(CentroidMatrix centroids, int subspaces, int subcentroidCount, int rerank) {
+		this.centroids = centroids;
+		this.rows = centroids.getRows();
+		int dimension = centroids.getDimension();
+		this.subspaces = Math.max(1, Math.min(subspaces, dimension));
+		this.subcentroidCount = Math.max(1, Math.min(Math.min(subcentroidCount, 256), this.rows));
+		this.rerank = rerank;
+		this.subspaceStarts = new int[this.subspaces + 1];
+		for (int m = 0; m <= this.subspaces; m++) {
+			this.subspaceStarts[m] = m * dimension / this.subspaces;
+		}
+		this.subcentroids = new double[this.subspaces][];
+		this.codes = new byte[this.rows * this.subspaces];
+		if (this.rows == 0) {
+			return;
+		}
+		int[] sample = sampleRows(new Random(TRAINING_SEED));
+		for (int m = 0; m < this.subspaces; m++) {
+			this.subcentroids[m] = train(m, sample, new Random(TRAINING_SEED + m));
+			for (int row = 0; row < this.rows; row++) {
+				this.codes[m * this.rows + row] = (byte) nearestSubcentroid(m, row, this.subcentroids[m]);
+			}
+		}
+	}
+
+	private int[] sampleRows(Random random) {
+		int[] order = new int[this.rows];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		int sampleSize = (int) Math.min(this.rows, (long) this.subcentroidCount * TRAINING_ROWS_PER_CENTROID);
+		for (int i = 0; i < sampleSize; i++) {
+			int j = i + random.nextInt(this.rows - i);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		int[] sample = new int[sampleSize];
+		System.arraycopy(order, 0, sample, 0, sampleSize);
+		return sample;
+	}
+
+	private double[] train(int m, int[] sample, Random random) {
+		int start = this.subspaceStarts[m];
+		int width = this.subspaceStarts[m + 1] - start;
+		int k = this.subcentroidCount;
+		double[] means = new double[k * width];
+		// The sample is shuffled, so its first rows are a random initialisation
+		for (int c = 0; c < k; c++) {
+			for (int d = 0; d < width; d++) {
+				means[c * width + d] = this.centroids.get(sample[c], start + d);
+			}
+		}
+		double[] sums = new double[k * width];
+		int[] counts = new int[k];
+		for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+			Arrays.fill(sums, 0.0);
+			Arrays.fill(counts, 0);
+			for (int row : sample) {
+				int c = nearestSubcentroid(m, row, means);
+				counts[c]++;
+				for (int d = 0; d < width; d++) {
+					sums[c * width + d] += this.centroids.get(row, start + d);
+				}
+			}
+			for (int c = 0; c < k; c++) {
+				if (counts[c] == 0) {
+					// Empty clusters restart at a random sample row
+					int row = sample[random.nextInt(sample.length)];
+					for (int d = 0; d < width; d++) {
+						means[c * width + d] = this.centroids.get(row, start + d);
+					}
+					continue;
+				}
+				for (int d = 0; d < width; d++) {
+					means[c * width + d] = sums[c * width + d] / counts[c];
+				}
+			}
+		}
+		return means;
+	}
+
+	private int nearestSubcentroid(int m, int row, double[] means) {
+		int start = this.subspaceStarts[m];
+		int width = this.subspaceStarts[m + 1] - start;
+		int nearest = 0;
+		double minDistance2 = Double.POSITIVE_INFINITY;
+		for (int c = 0, offset = 0; c < this.subcentroidCount; c++, offset += width) {
+			double distance2 = 0.0;
+			for (int d = 0; d < width; d++) {
+				double diff = this.centroids.get(row, start + d) - means[offset + d];
+				distance2 += diff * diff;
+			}
+			if (distance2 < minDistance2) {
+				minDistance2 = distance2;
+				nearest = c;
+			}
+		}
+		return nearest;
+	}
+
+	@Override
+	public void findNearest(double[] featureVector, Nearest nearest) {
+		if (this.rows == 0) {
+			return;
+		}
+		final int subspaces = this.subspaces;
+		final int k = this.subcentroidCount;
+		double[] table = new double[subspaces * k];
+		for (int m = 0; m < subspaces; m++) {
+			int start = this.subspaceStarts[m];
+			int width = this.subspaceStarts[m + 1] - start;
+			double[] means = this.subcentroids[m];
+			for (int c = 0, offset = 0; c < k; c++, offset += width) {
+				double distance2 = 0.0;
+				for (int d = 0; d < width; d++) {
+					double diff = featureVector[start + d] - means[offset + d];
+					distance2 += diff * diff;
+				}
+				table[m * k + c] = distance2;
+			}
+		}
+		// Approximate distances are accumulated one subspace at a time over all rows
+		final byte[] codes = this.codes;
+		final int rows = this.rows;
+		double[] distances2 = new double[rows];
+		for (int m = 0, offset = 0; m < subspaces; m++, offset += rows) {
+			final int tableOffset = m * k;
+			for (int row = 0; row < rows; row++) {
+				distances2[row] += table[tableOffset + (codes[offset + row] & 0xff)];
+			}
+		}
+		if (this.rerank <= 0) {
+			for (int row = 0; row < rows; row++) {
+				nearest.offer(row, distances2[row]);
+			}
+			return;
+		}
+		// Max-heap of the rerank candidates with the smallest approximate distances
+		int capacity = Math.min(this.rerank, this.rows);
+		int[] heapRows = new int[capacity];
+		double[] heapDistances = new double[capacity];
+		int size = 0;
+		for (int row = 0; row < rows; row++) {
+			double distance2 = distances2[row];
+			if (size < capacity) {
+				int i = size++;
+				while (i > 0 && heapDistances[(i - 1) >> 1] < distance2) {
+					heapRows[i] = heapRows[(i - 1) >> 1];
+					heapDistances[i] = heapDistances[(i - 1) >> 1];
+					i = (i - 1) >> 1;
+				}
+				heapRows[i] = row;
+				heapDistances[i] = distance2;
+			} else if (distance2 < heapDistances[0]) {
+				int i = 0;
+				while (true) {
+					int child = 2 * i + 1;
+					if (child >= size) {
+						break;
+					}
+					if (child + 1 < size && heapDistances[child + 1] > heapDistances[child]) {
+						child++;
+					}
+					if (heapDistances[child] <= distance2) {
+						break;
+					}
+					heapRows[i] = heapRows[child];
+					heapDistances[i] = heapDistances[child];
+					i = child;
+				}
+				heapRows[i] = row;
+				heapDistances[i] = distance2;
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			nearest.offer(heapRows[i], this.centroids.distance2(heapRows[i], featureVector, nearest.bound()));
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+import java.util.Objects;
+
+/**
+ * The type of {@link CentroidIndex} built when a codebook is loaded, and the parameters
+ * of the product quantization index.
+ */
+public final class SearchIndexConfig {
+
+	private final String type;
+	private final int pqSubspaces;
+	private final int pqCentroids;
+	private final int pqRerank;
+
+	/**
+	 * @param type the index type, linear if null or unknown
+	 * @param pqSubspaces the number of subspaces the features are split into
+	 * @param pqCentroids the number of centroids per subspace, at most 256
+	 * @param pqRerank the number of approximate candidates compared exactly, 0 reports approximate distortions
+	 */
+	public SearchIndexConfig(String type, int pqSubspaces, int pqCentroids, int pqRerank) {
+		this.type = type;
+		this.pqSubspaces = pqSubspaces;
+		this.pqCentroids = pqCentroids;
+		this.pqRerank = pqRerank;
+	}
+
+	public static SearchIndexConfig of(String type) {
+		return new SearchIndexConfig(type, 8, 256, 64);
+	}
+
+	public String getType() {
+		return this.type;
+	}
+
+	public int getPqSubspaces() {
+		return this.pqSubspaces;
+	}
+
+	public int getPqCentroids() {
+		return this.pqCentroids;
+	}
+
+	public int getPqRerank() {
+		return this.pqRerank;
+	}
+
+	@Override
+	public boolean equals(Object object) {
+		if (this == object) {
+			return true;
+		}
+		if (!(object instanceof SearchIndexConfig)) {
+			return false;
+		}
+		SearchIndexConfig other = (SearchIndexConfig) object;
+		return Objects.equals(this.type, other.type) && this.pqSubspaces == other.pqSubspaces
+				&& this.pqCentroids == other.pqCentroids && this.pqRerank == other.pqRerank;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.type, this.pqSubspaces, this.pqCentroids, this.pqRerank);
+	}
+}
@@ -0,0 +1,112 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+/**
+ * Collects the nearest centroid of each of the k nearest codebooks, ordered by distance.
+ *
+ * The entries are kept sorted in fixed-size arrays, which for small k is cheaper than a
+ * heap. A codebook is listed once, with its nearest centroid. Once k codebooks are
+ * listed, the distance of the k-th is the bound for the index, since a farther centroid
+ * cannot enter the list nor improve a listed codebook.
+ */
+final class TopClasses extends CentroidIndex.Nearest {
+
+	private final int k;
+	private final int[] centroidCodebooks;
+	private final int[] codebooks;
+	private final int[] rows;
+	private final double[] distances2;
+	private int size = 0;
+
+	TopClasses(int k, int[] centroidCodebooks) {
+		this.k = k;
+		this.centroidCodebooks = centroidCodebooks;
+		this.codebooks = new int[k];
+		this.rows = new int[k];
+		this.distances2 = new double[k];
+	}
+
+	@Override
+	void offer(int row, double distance2) {
+		if (this.size == this.k && distance2 >= this.distances2[this.k - 1]) {
+			return;
+		}
+		int codebook = this.centroidCodebooks[row];
+		for (int i = 0; i < this.size; i++) {
+			if (this.codebooks[i] == codebook) {
+				if (distance2 >= this.distances2[i]) {
+					return;
+				}
+				remove(i);
+				break;
+			}
+		}
+		int i = Math.min(this.size, this.k - 1);
+		while (i > 0 && this.distances2[i - 1] > distance2) {
+			this.codebooks[i] = this.codebooks[i - 1];
+			this.rows[i] = this.rows[i - 1];
+			this.distances2[i] = this.distances2[i - 1];
+			i--;
+		}
+		this.codebooks[i] = codebook;
+		this.rows[i] = row;
+		this.distances2[i] = distance2;
+		if (this.size < this.k) {
+			this.size++;
+		}
+	}
+
+	private void remove(int index) {
+		for (int i = index + 1; i < this.size; i++) {
+			this.codebooks[i - 1] = this.codebooks[i];
+			this.rows[i - 1] = this.rows[i];
+			this.distances2[i - 1] = this.distances2[i];
+		}
+		this.size--;
+	}
+
+	@Override
+	double bound() {
+		return this.size < this.k ? Double.POSITIVE_INFINITY : this.distances2[this.k - 1];
+	}
+
+	@Override
+	void refine(CentroidMatrix centroids, double[] featureVector) {
+		int size = this.size;
+		this.size = 0;
+		for (int i = 0; i < size; i++) {
+			int row = this.rows[i];
+			double distance2 = centroids.distance2(row, featureVector, Double.POSITIVE_INFINITY);
+			// Entries are re-inserted, they only move if the distances were close
+			shift(i, row, distance2);
+		}
+	}
+
+	private void shift(int end, int row, double distance2) {
+		int i = end;
+		while (i > 0 && this.distances2[i - 1] > distance2) {
+			this.codebooks[i] = this.codebooks[i - 1];
+			this.rows[i] = this.rows[i - 1];
+			this.distances2[i] = this.distances2[i - 1];
+			i--;
+		}
+		this.codebooks[i] = this.centroidCodebooks[row];
+		this.rows[i] = row;
+		this.distances2[i] = distance2;
+		this.size++;
+	}
+
+	@Override
+	int size() {
+		return this.size;
+	}
+
+	@Override
+	int getRow(int rank) {
+		return this.rows[rank];
+	}
+
+	@Override
+	double getDistance2(int rank) {
+		return this.distances2[rank];
+	}
+}
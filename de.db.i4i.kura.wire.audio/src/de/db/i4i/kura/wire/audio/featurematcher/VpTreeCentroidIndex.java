@@ -0,0 +1,116 @@
+package de.db.i4i.kura.wire.audio.featurematcher;
+
+/**
+ * An implicit vantage-point tree over a permutation of the centroid rows.
+ *
+ * The first point of the range [lo, hi) is the vantage point. The remaining points are
+ * split at the median of their distance to it, nearer points first, and the median
+ * distance is stored at the vantage point. Ranges of up to LEAF_SIZE points are scanned
+ * linearly.
+ */
+final class VpTreeCentroidIndex implements CentroidIndex {
+
+	private static final int LEAF_SIZE = 8;
+
+	private final CentroidMatrix centroids;
+	private final int dimension;
+	// The centroid row of every tree position
+	private final int[] rows;
+	private final double[] radii;
+
+	VpTreeCentroidIndex(CentroidMatrix centroids) {
+		this.centroids = centroids;
+		this.dimension = centroids.getDimension();
+		int rows = centroids.getRows();
+		int[] order = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			order[i] = i;
+		}
+		this.radii = new double[rows];
+		build(centroids, order, new double[rows], 0, rows);
+		this.rows = order;
+	}
+
+	private void build(CentroidMatrix centroids, int[] order, double[] distances, int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			return;
+		}
+		double[] vantagePoint = new double[this.dimension];
+		for (int d = 0; d < this.dimension; d++) {
+			vantagePoint[d] = centroids.get(order[lo], d);
+		}
+		for (int i = lo + 1; i < hi; i++) {
+			distances[i] = Math.sqrt(centroids.distance2(order[i], vantagePoint, Double.POSITIVE_INFINITY));
+		}
+		int mid = (lo + 1 + hi) >>> 1;
+		select(order, distances, lo + 1, hi - 1, mid);
+		this.radii[lo] = distances[mid];
+		build(centroids, order, distances, lo + 1, mid);
+		build(centroids, order, distances, mid, hi);
+	}
+
+	// Quickselect on distances, keeping order in step
+	private static void select(int[] order, double[] distances, int left, int right, int k) {
+		while (left < right) {
+			double pivot = distances[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (distances[i] < pivot) {
+					i++;
+				}
+				while (distances[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					double swapDistance = distances[i];
+					distances[i] = distances[j];
+					distances[j] = swapDistance;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void findNearest(double[] featureVector, Nearest nearest) {
+		search(featureVector, nearest, 0, this.rows.length);
+	}
+
+	private void search(double[] featureVector, Nearest nearest, int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi; i++) {
+				nearest.offer(this.rows[i], this.centroids.distance2(this.rows[i], featureVector, nearest.bound()));
+			}
+			return;
+		}
+		// The exact distance to the vantage point is needed for pruning, so it is not abandoned
+		double distance2 = this.centroids.distance2(this.rows[lo], featureVector, Double.POSITIVE_INFINITY);
+		nearest.offer(this.rows[lo], distance2);
+		double distance = Math.sqrt(distance2);
+		double radius = this.radii[lo];
+		int mid = (lo + 1 + hi) >>> 1;
+		if (distance < radius) {
+			search(featureVector, nearest, lo + 1, mid);
+			if (distance + Math.sqrt(nearest.bound()) >= radius) {
+				search(featureVector, nearest, mid, hi);
+			}
+		} else {
+			search(featureVector, nearest, mid, hi);
+			if (distance - Math.sqrt(nearest.bound()) <= radius) {
+				search(featureVector, nearest, lo + 1, mid);
+			}
+		}
+	}
+}